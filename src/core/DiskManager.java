@@ -4,11 +4,15 @@ import core.game.sudoku.KillerSudoku;
 import core.game.sudoku.StandardKillerSudoku;
 import core.game.sudoku.StandardSudoku;
 import core.game.User;
+import core.library.PuzzleFormatException;
+import core.library.PuzzleLibrary;
+import core.library.TextPuzzleParser;
 
 import java.io.*;
-import java.lang.reflect.Array;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.function.Predicate;
 
 /** A Singleton that handles the disk operations */
 public final class DiskManager {
@@ -17,6 +21,25 @@ public final class DiskManager {
     private static final File dataFolder = new File("data");
     private static final File gameFolder = new File(dataFolder, "games");
     private static final File userFolder = new File(dataFolder, "users");
+    //The user store file
+    private static final File userStoreFile = new File(dataFolder, "users.db");
+    //The puzzle library file
+    private static final File libraryFile = new File(gameFolder, "library.bin");
+    
+    //The mapped puzzle library and the modification time it was mapped at
+    private static PuzzleLibrary library = null;
+    private static long libraryModified = 0;
+    //Selects random puzzles from the library
+    private static final Random random = new Random();
+    //The suffixes of the user journals of the old format and of unfinished writes
+    private static final String JOURNAL_SUFFIX = ".played", TEMP_SUFFIX = ".tmp";
+    //The user store, opened on first use, and the users loaded from it
+    private static UserStore userStore = null;
+    private static final Map<String, User> loadedUsers = new HashMap<>();
+    //Saves the tracked users in the background
+    private static final UserWriter userWriter = new UserWriter();
+    //The game file parser of each thread
+    private static final ThreadLocal<TextPuzzleParser> parsers = ThreadLocal.withInitial(TextPuzzleParser::new);
     
     
     /**
@@ -25,42 +48,45 @@ public final class DiskManager {
      * @return A sudoku game for the given user or null if no sudoku game is found
      */
     public static StandardSudoku loadSudoku(User user) {
-        gameFolder.mkdirs(); //Attempt to make sub dirs
-        
-        File[] gameFiles = gameFolder.listFiles(new SimpleFileNameFilter("sudoku")); // List all files with the suffix sudoku
-        
-        if(gameFiles == null || gameFiles.length == 0)  // If non existent or empty
-            return null;                                // return null
-        
-        List<File> fileList = Arrays.asList(gameFiles);
-        Collections.shuffle(fileList);
-        
-        File gameFile = null;   // Find the first game that the user hasn't played yet
-        for(File gf : fileList)
-            if(!user.getPlayed().contains(gf.getName())) {
-                gameFile = gf;
-                break;
-            }
-    
-        if(gameFile == null)    // If no new game return null
-            return null;
+        return loadSudoku(user, game -> false);
+    }
     
-        int[] rawBoard = new int[StandardSudoku.BOARD_DIMENSION_SIZE*StandardSudoku.BOARD_DIMENSION_SIZE];  // new board
+    /**
+     * Loads the next sudoku game given a user, skipping some games
+     * @param user The user to select the game for
+     * @param skip Selects the names of games to skip, besides the played ones
+     * @return A sudoku game for the given user or null if no sudoku game is found
+     */
+    public static StandardSudoku loadSudoku(User user, Predicate<String> skip) {
+        PuzzleLibrary library = getLibrary();   // First look in the library
+        if(library != null) {
+            int id = findUnplayed(library, PuzzleLibrary.Kind.SUDOKU, user, skip);
+            if(id != -1)
+                return new StandardSudoku(PuzzleLibrary.nameOf(PuzzleLibrary.Kind.SUDOKU, id), user, library.readSudoku(id, new int[PuzzleLibrary.CELLS]));
+        }
         
-        try(BufferedReader reader = new BufferedReader(new FileReader(gameFile))) {
-            String line;
-            while( (line = reader.readLine()) != null) {    // Read each line
-                String[] split = line.split(",");           // Split it
-                int i = Integer.parseInt(split[0]);         // Parse first = i
-                int j = Integer.parseInt(split[1]);         // Parse second = j
-                int v = Integer.parseInt(split[2]);         // Parse third = v
-                rawBoard[i + j*StandardSudoku.BOARD_DIMENSION_SIZE] = v;    // RowMajor conversion and assignment
+        for(File gameFile : shuffledGameFiles("sudoku")) {  // Then the first game file the user hasn't played yet
+            if(user.hasPlayed(gameFile.getName()) || skip.test(gameFile.getName()))
+                continue;
+            try {
+                return new StandardSudoku(gameFile.getName(), user, readSudokuBoard(gameFile));  // Return a new Standard sudoku game
+            } catch (IOException | IllegalArgumentException e) { // If malformed report it and try the next one
+                System.err.println(e.getMessage());
             }
-        } catch (Exception e) { //If anything fails return null
-            e.printStackTrace();
-            return null;
         }
-        return new StandardSudoku(gameFile.getName(), user, rawBoard);  // Return a new Standard sudoku game
+        return null;    // If no new game return null
+    }
+    
+    /**
+     * Reads the board of a sudoku game file
+     * @param gameFile The game file
+     * @return the board of the game in row major order
+     * @throws PuzzleFormatException if the file is malformed
+     * @throws IOException if the file cannot be read
+     */
+    public static int[] readSudokuBoard(File gameFile) throws IOException {
+        int d = StandardSudoku.BOARD_DIMENSION_SIZE;
+        return parsers.get().parseSudoku(gameFile, new int[d*d], d);
     }
     
     
@@ -70,71 +96,223 @@ public final class DiskManager {
      * @return A killer sudoku game for the given user or null if no sudoku game is found
      */
     public static StandardKillerSudoku loadKillerSudoku(User user) {
-        gameFolder.mkdirs(); //Attempt to make sub dirs
+        return loadKillerSudoku(user, game -> false);
+    }
+    
+    /**
+     * Loads the next killer sudoku game given a user, skipping some games
+     * @param user The user to select the game for
+     * @param skip Selects the names of games to skip, besides the played ones
+     * @return A killer sudoku game for the given user or null if no sudoku game is found
+     */
+    public static StandardKillerSudoku loadKillerSudoku(User user, Predicate<String> skip) {
+        PuzzleLibrary library = getLibrary();   // First look in the library
+        if(library != null) {
+            int id = findUnplayed(library, PuzzleLibrary.Kind.KILLER, user, skip);
+            if(id != -1)
+                return new StandardKillerSudoku(PuzzleLibrary.nameOf(PuzzleLibrary.Kind.KILLER, id), user, library.readKiller(id));
+        }
         
-        File[] gameFiles = gameFolder.listFiles(new SimpleFileNameFilter("killer")); // List all files with the suffix killer
+        for(File gameFile : shuffledGameFiles("killer")) {  // Then the first game file the user hasn't played yet
+            if(user.hasPlayed(gameFile.getName()) || skip.test(gameFile.getName()))
+                continue;
+            try {
+                return new StandardKillerSudoku(gameFile.getName(), user, readKillerAreas(gameFile));   //Return the new killer sudoku game
+            } catch (IOException | IllegalArgumentException e) { // If malformed report it and try the next one
+                System.err.println(e.getMessage());
+            }
+        }
+        return null;    // If no new game return null
+    }
     
-        if(gameFiles == null || gameFiles.length == 0) // If non existent or empty, return null
-            return null;
+    /**
+     * Reads the areas of a killer sudoku game file
+     * @param gameFile The game file
+     * @return the areas of the game
+     * @throws PuzzleFormatException if the file is malformed
+     * @throws IOException if the file cannot be read
+     */
+    public static Set<KillerSudoku.Area> readKillerAreas(File gameFile) throws IOException {
+        int d = StandardKillerSudoku.BOARD_DIMENSION_SIZE;
+        TextPuzzleParser parser = parsers.get();
+        int cages = parser.parseKiller(gameFile, d*d);
+        
+        Set<KillerSudoku.Area> areas = new HashSet<>();
+        for(int c = 0; c < cages; ++c)
+            areas.add(new KillerSudoku.Area(parser.getCageSum(c), parser.getCageCells(c)));
+        return areas;
+    }
+    
+    /**
+     * Lists the game files with the given suffix in random order
+     * @param suffix The suffix of the game files
+     * @return the game files, empty if there are none
+     */
+    private static List<File> shuffledGameFiles(String suffix) {
+        gameFolder.mkdirs(); //Attempt to make sub dirs
+        
+        File[] gameFiles = gameFolder.listFiles(new SimpleFileNameFilter(suffix)); // List all files with the suffix
+        
+        if(gameFiles == null)               // If non existent
+            return Collections.emptyList(); // there are no games
         
         List<File> fileList = Arrays.asList(gameFiles);
         Collections.shuffle(fileList);
+        return fileList;
+    }
+    
+    /**
+     * Finds a random puzzle of the library that the user hasn't played yet
+     * @param library   The library
+     * @param kind      The kind of the puzzle
+     * @param user      The user
+     * @param skip      Selects the names of puzzles to skip
+     * @return the id of the puzzle or -1 if there is no such puzzle
+     */
+    private static int findUnplayed(PuzzleLibrary library, PuzzleLibrary.Kind kind, User user, Predicate<String> skip) {
+        int count = library.getCount(kind);
+        if(count == 0)
+            return -1;
         
-        File gameFile = null; // Find the first game that the user hasn't played yet
-        for(File gf : fileList)
-            if(!user.getPlayed().contains(gf.getName())) {
-                gameFile = gf;
-                break;
+        int start = random.nextInt(count);  // Probe from a random puzzle onwards
+        for(int k = 0; k < count; ++k) {
+            int id = (start + k) % count;
+            String name = PuzzleLibrary.nameOf(kind, id);
+            if(!user.hasPlayed(name) && !skip.test(name))
+                return id;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the puzzle library, mapping it again if the file has changed
+     * @return the puzzle library or null if there is no (valid) library file
+     */
+    private static synchronized PuzzleLibrary getLibrary() {
+        long modified = libraryFile.lastModified(); // 0 if it does not exist
+        if(modified != libraryModified) {
+            libraryModified = modified;
+            library = null;
+            if(modified != 0) {
+                try {
+                    library = new PuzzleLibrary(libraryFile);
+                } catch (IOException e) {   // If not valid ignore the library
+                    e.printStackTrace();
+                }
             }
+        }
+        return library;
+    }
+    
+    /**
+     * Lists the users on the disk, without loading them
+     * @return the names of all the users
+     */
+    public static synchronized Set<String> loadUserNames() {
+        UserStore store = getUserStore();
+        return store == null ? new HashSet<>() : store.getNames();
+    }
+    
+    /**
+     * Loads a user from the disk. The loaded user is saved in the background whenever it changes.
+     * @param name The user name
+     * @return A user by name from the disk or null if the user does not exist
+     */
+    public static synchronized User loadUser(String name) {
+        User user = loadedUsers.get(name);  // Each user is loaded once
+        if(user != null)
+            return user;
         
-        if(gameFile == null) // If no new game return null
+        UserStore store = getUserStore();
+        if(store == null)
             return null;
-    
-        Set<KillerSudoku.Area> areas = new HashSet<>();
-        try(BufferedReader reader = new BufferedReader(new FileReader(gameFile))) {
-            String line;
-            while( (line = reader.readLine()) != null) {            // Read each line
-                String[] split = line.split(",");                   // Split it by comma
-                int sum = Integer.parseInt(split[0]);               // first = sum
-                Set<Integer> indices = new HashSet<>();             // rest = indices
-                
-                for(String str : Arrays.copyOfRange(split, 1, split.length))
-                    indices.add(Integer.parseInt(str));
-                
-                areas.add(new KillerSudoku.Area(sum, indices));     // Construct a new area
-            }
-        } catch (Exception e) { //If anything fails return null
+        
+        try {
+            user = store.load(name);
+        } catch (IOException e) { // If anything fails print stack trace and return null
             e.printStackTrace();
             return null;
         }
-        return new StandardKillerSudoku(gameFile.getName(), user, areas);   //Return the new killer sudoku game
+        if(user != null) {
+            loadedUsers.put(name, user);
+            track(user);
+        }
+        return user;
     }
     
     /**
-     * Loads a user from the disk
+     * Creates a new user and saves it in the background, now and whenever it changes
      * @param name The user name
-     * @return A user by name from the disk or null if the user does not exist
+     * @return the new user or null if the name is taken
      */
-    public static User loadUser(String name) {
-        userFolder.mkdirs();    //Attempt to make sub dirs
-        File userFile = new File(userFolder, name); // Select the file with the given name
-        
-        if(!userFile.exists())  // If it does not exist return null
+    public static synchronized User createUser(String name) {
+        UserStore store = getUserStore();
+        if(loadedUsers.containsKey(name) || (store != null && store.contains(name)))
             return null;
+        
+        User user = new User(name);
+        loadedUsers.put(name, user);
+        track(user);
+        user.markDirty();
+        return user;
+    }
     
+    /**
+     * Opens the user store, migrating the users of the old one file per user format on first use
+     * @return the user store or null if it cannot be opened
+     */
+    private static synchronized UserStore getUserStore() {
+        if(userStore != null)
+            return userStore;
         
+        try {
+            if(!userStoreFile.exists()) {
+                File[] userFiles = userFolder.listFiles();  // List all files of the old format
+                if(userFiles != null && userFiles.length > 0) {
+                    List<User> users = new ArrayList<>();
+                    for(File userFile : userFiles) {
+                        String name = userFile.getName();
+                        if(name.endsWith(JOURNAL_SUFFIX) || name.endsWith(TEMP_SUFFIX))  //Skip journals and unfinished writes
+                            continue;
+                        User user = loadLegacyUser(userFile);
+                        if(user != null)
+                            users.add(user);
+                    }
+                    File temp = new File(userStoreFile.getPath() + TEMP_SUFFIX);
+                    UserStore.write(temp, users);
+                    Files.move(temp.toPath(), userStoreFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            userStore = new UserStore(userStoreFile);
+        } catch (IOException e) {   // If anything fails there are no users
+            e.printStackTrace();
+        }
+        return userStore;
+    }
+    
+    /**
+     * Loads a user of the old format, a file named after the user (played games comma separated, wins and losses on
+     * three lines) and a journal ({@value #JOURNAL_SUFFIX}) with the games played since, one per line
+     * @param userFile The file of the user
+     * @return the user or null if the file is not a user file
+     */
+    private static User loadLegacyUser(File userFile) {
         try {
             List<String> lines = Files.readAllLines(userFile.toPath()); // Read all lines
             
             if(lines.size() != 3)   // lines must be 3
                 return null;
             
-            List<String> played = Arrays.asList(lines.get(0).split(","));   // Split the first by comma and these are the played games
+            List<String> played = new ArrayList<>(Arrays.asList(lines.get(0).split(",")));   // Split the first by comma and these are the played games
+            
+            File journal = new File(userFile.getPath() + JOURNAL_SUFFIX);   // Add the games played since
+            if(journal.exists())
+                played.addAll(Files.readAllLines(journal.toPath()));
             
             int wins = Integer.parseInt(lines.get(1));      // Parse second = wins
             int losses = Integer.parseInt(lines.get(2));    // Parse third = losses
             
-            return new User(name, wins, losses, played);    // Return the user
+            return new User(userFile.getName(), wins, losses, played);    // Return the user
             
         } catch (Exception e) { // If anything fails print stack trace and return null
             e.printStackTrace();
@@ -143,24 +321,18 @@ public final class DiskManager {
     }
     
     /**
-     * Loads all users from the disk
-     * @return A set with all the users
+     * Saves the user in the background whenever it changes
+     * @param user The user
      */
-    public static Set<User> loadAllUsers() {
-        userFolder.mkdirs();                        // Attempt to make sub dirs
-        File[] userFiles = userFolder.listFiles();  // List all files in that sub dir
-        Set<User> users = new HashSet<>();
+    private static void track(User user) {
+        user.setListener(userWriter);
+    }
     
-        if(userFiles != null) {
-            for(File userFile : userFiles) {                //For each file
-                User user = loadUser(userFile.getName());   //Attempt to load the user
-                if(user == null)                            //If user not loaded discard it
-                    continue;
-                users.add(user);                            //Else add to the set
-            }
-        }
-        
-        return users;   // return the set of loaded users
+    /**
+     * Saves the pending changes of all the tracked users and stops saving in the background
+     */
+    public static void flushUsers() {
+        userWriter.shutdown();
     }
     
     /**
@@ -171,26 +343,31 @@ public final class DiskManager {
         if( users == null )
             return;
         
-        userFolder.mkdirs();    //Attempt to make sub dirs
+        for(User user : users)  //For each user in the set
+            saveUser(user);
+    }
+    
+    /**
+     * Appends the changes of a user since it was last saved to the user store
+     * @param user The user
+     * @return true if the user was saved, false otherwise
+     */
+    static boolean saveUser(User user) {
+        User.Changes changes = user.getChanges();
+        if(changes.isEmpty())
+            return true;
         
-        for(User user : users) {                                                        //For each user in the set
-            File userFile = new File(userFolder, user.getName());                       //Assign a file to it
-            try(PrintStream out = new PrintStream(new FileOutputStream(userFile))) {    //Attempt to write on that file
-                List<String> played = user.getPlayed();                                 //
-                if(!played.isEmpty()) {                                                 //If played anything
-                    for(int i=0; i<played.size()-1; ++i)                                //print on the first line
-                        out.printf("%s,", played.get(i));                               //all of the played games comma seperated
-                    out.println(played.get(played.size()-1));                           //last one does not end with a comma
-                } else {
-                    out.println();                                                      //If not played then print empty line
-                }
-                
-                
-                out.println(user.getWins());    // Print the wins
-                out.print(user.getLosses());     // Print the losses
-            } catch (Exception e) { //If anything fails print stack trace and return
-                e.printStackTrace();
-            }
+        UserStore store = getUserStore();
+        if(store == null)
+            return false;
+        
+        try {
+            store.append(user.getName(), changes);
+            user.markSaved(changes);
+            return true;
+        } catch (IOException e) { //If anything fails print stack trace, the user stays dirty
+            e.printStackTrace();
+            return false;
         }
     }
     
@@ -0,0 +1,194 @@
+package core;
+
+import core.game.User;
+import core.game.solvers.BacktrackingSolver;
+import core.game.solvers.CandidateSolver;
+import core.game.solvers.SudokuSolver;
+import core.game.sudoku.Sudoku;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the next unplayed sudoku and killer sudoku of a user loaded in the background, each kind on its own thread,
+ * so that starting a new game does not touch the disk.
+ * <br>
+ * A prefetched game is solved on a copy, which is kept with it so that solving the game needs no search, and skipped
+ * if it has no solution. A game is not offered again once it was taken, and a prefetched game is dropped if the user
+ * played it in the meantime. A prefetcher serves a single user, a new one must be created when the user changes.
+ * <br>
+ * Taking a game waits until it is loaded, and loads one if the prefetched game is not usable, so it must not be
+ * called on the event dispatch thread.
+ */
+public final class GamePrefetcher {
+
+    //The maximum number of unsolvable games skipped in a row
+    private static final int MAX_SKIPPED = 16;
+
+    //The user
+    private final User user;
+    //The games taken or found unsolvable, never offered again
+    private final Set<String> skipped = ConcurrentHashMap.newKeySet();
+    //The next games of each kind
+    private final Kind sudokus, killerSudokus;
+
+    /**
+     * Constructs a prefetcher and starts loading the next games of the user
+     * @param user The user
+     */
+    public GamePrefetcher(User user) {
+        this.user = user;
+        sudokus       = new Kind("sudoku-prefetcher", DiskManager::loadSudoku);
+        killerSudokus = new Kind("killer-sudoku-prefetcher", DiskManager::loadKillerSudoku);
+    }
+
+    /**
+     * Takes the next sudoku game and starts loading the one after it, waiting for it if it is still loading
+     * @return the next sudoku game and its solution or null if there is none
+     */
+    public Game takeSudoku() {
+        return sudokus.take();
+    }
+
+    /**
+     * Takes the next killer sudoku game and starts loading the one after it, waiting for it if it is still loading
+     * @return the next killer sudoku game and its solution or null if there is none
+     */
+    public Game takeKillerSudoku() {
+        return killerSudokus.take();
+    }
+
+    /**
+     * Stops loading games
+     */
+    public void shutdown() {
+        sudokus.executor.shutdownNow();
+        killerSudokus.executor.shutdownNow();
+    }
+
+    /**
+     * Solves a copy of a game
+     * @param game The game, left untouched
+     * @return the solved copy or null if the game has no solution
+     */
+    private static Sudoku solve(Sudoku game) {
+        SudokuSolver solver = game.getBoardDimension() <= Sudoku.MAX_CANDIDATE_DIMENSION
+                ? new CandidateSolver() : new BacktrackingSolver();
+        Sudoku solution = game.copy();
+        return solver.solve(solution) ? solution : null;
+    }
+
+    /** A game and its solution */
+    public static final class Game {
+
+        //The game and its solved copy
+        private final Sudoku game, solution;
+
+        /**
+         * Constructs a game
+         * @param game      The game
+         * @param solution  The solved copy of the game
+         */
+        private Game(Sudoku game, Sudoku solution) {
+            this.game = game;
+            this.solution = solution;
+        }
+
+        /**
+         * Getter for the game
+         * @return the game
+         */
+        public Sudoku getGame() {
+            return game;
+        }
+
+        /**
+         * Getter for the solution
+         * @return the solved copy of the game, not tied to it
+         */
+        public Sudoku getSolution() {
+            return solution;
+        }
+    }
+
+    /** The next game of a kind, loaded on a thread of its own */
+    private final class Kind {
+
+        //The background thread
+        private final ExecutorService executor;
+        //Loads a game for a user, skipping some names
+        private final BiFunction<User, Predicate<String>, ? extends Sudoku> loader;
+        //The next game
+        private Future<Game> next;
+
+        /**
+         * Constructs a kind and starts loading its next game
+         * @param name      The name of the thread
+         * @param loader    Loads a game for a user, skipping some names
+         */
+        Kind(String name, BiFunction<User, Predicate<String>, ? extends Sudoku> loader) {
+            this.loader = loader;
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            next = prefetch();
+        }
+
+        /**
+         * Takes the prefetched game, or loads one now if it is not usable, and starts loading the next one
+         * @return the game or null if there is none
+         */
+        synchronized Game take() {
+            Game game = null;
+            try {
+                game = next.get();  //Instant unless still loading
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                e.printStackTrace();
+            }
+
+            if(game != null && (user.hasPlayed(game.game.getName()) || skipped.contains(game.game.getName())))
+                game = null;        //Played in the meantime
+            if(game == null)
+                game = load();      //Nothing usable, load now
+            if(game != null)
+                skipped.add(game.game.getName());
+            next = prefetch();
+            return game;
+        }
+
+        /**
+         * Loads the next solvable game in the background
+         * @return the future game
+         */
+        private Future<Game> prefetch() {
+            try {
+                return executor.submit(this::load);
+            } catch (RejectedExecutionException e) {   //Shut down
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        /**
+         * Loads the next solvable game and solves it
+         * @return the game or null if there is none
+         */
+        private Game load() {
+            for(int k = 0; k < MAX_SKIPPED && !Thread.currentThread().isInterrupted(); ++k) {
+                Sudoku game = loader.apply(user, skipped::contains);
+                if(game == null)
+                    return null;
+                Sudoku solution = solve(game);
+                if(solution != null)
+                    return new Game(game, solution);
+                skipped.add(game.getName());    //Unsolvable, try an other one
+            }
+            return null;
+        }
+    }
+}
@@ -11,15 +11,17 @@ public final class LanguageSettings {
     private static final String MESSAGES_BUNDLE_KEY   = "message_bundle";
     
     
-    //Bundles
-    private static ResourceBundle guiBundle     = ResourceBundle.getBundle(GUI_BUNDLE_KEY);
-    private static ResourceBundle messageBundle = ResourceBundle.getBundle(MESSAGES_BUNDLE_KEY);
+    //Bundles, loaded on first use
+    private static ResourceBundle guiBundle     = null;
+    private static ResourceBundle messageBundle = null;
     
     /**
      * Gets the current gui bundle
      * @return the current gui bundle
      */
-    public static ResourceBundle getGuiBundle() {
+    public static synchronized ResourceBundle getGuiBundle() {
+        if(guiBundle == null)
+            guiBundle = ResourceBundle.getBundle(GUI_BUNDLE_KEY);
         return guiBundle;
     }
     
@@ -27,7 +29,7 @@ public final class LanguageSettings {
      * Loads new gui bundle based on a locale
      * @param locale The locale
      */
-    public static void loadGuiBundle(Locale locale) {
+    public static synchronized void loadGuiBundle(Locale locale) {
         guiBundle = ResourceBundle.getBundle(GUI_BUNDLE_KEY, locale);
     }
     
@@ -35,7 +37,9 @@ public final class LanguageSettings {
      * Gets the current message bundle
      * @return the current message bundle
      */
-    public static ResourceBundle getMessageBundle() {
+    public static synchronized ResourceBundle getMessageBundle() {
+        if(messageBundle == null)
+            messageBundle = ResourceBundle.getBundle(MESSAGES_BUNDLE_KEY);
         return messageBundle;
     }
     
@@ -43,7 +47,7 @@ public final class LanguageSettings {
      * Loads new message bundle based on a locale
      * @param locale The locale
      */
-    public static void loadMessageBundle(Locale locale) {
+    public static synchronized void loadMessageBundle(Locale locale) {
         messageBundle = ResourceBundle.getBundle(MESSAGES_BUNDLE_KEY, locale);
     }
     
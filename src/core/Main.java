@@ -2,12 +2,27 @@ package core;
 
 import core.gui.MainForm;
 
+import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
 /** Entry class */
 public final class Main {
     
     /** Entry point */
     public static void main(String[] args) {
-        new MainForm().setVisible(true);
+        long start = System.nanoTime();
+        SwingUtilities.invokeLater(() -> {          //Build the window on the EDT
+            MainForm form = new MainForm();
+            form.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    System.out.printf("Time to first frame: %d ms%n", (System.nanoTime() - start)/1_000_000);
+                }
+            });
+            form.setVisible(true);
+            form.loadUsersInBackground();           //Fill the user menu once the window is up
+        });
     }
     
     //Prevent instantiation
@@ -0,0 +1,402 @@
+package core;
+
+import core.game.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * All the users in a single file: an indexed snapshot followed by an append-only log of changes.
+ * <pre>
+ * header   : magic(int) version(short) reserved(short) indexOffset(long) logOffset(long)
+ * record   : length(int) crc32(int) payload(length bytes)
+ * payload  : type(byte) name(UTF) then
+ *              USER    wins(int) losses(int) count(int) count * game(UTF)     (replaces the user)
+ *              STATS   wins(int) losses(int)
+ *              PLAYED  count(int) count * game(UTF)                           (appends to the played games)
+ * index    : count(int) then count * name(UTF) offset(long), the USER record of each user in the snapshot
+ * </pre>
+ * Opening reads the index and scans only the log after it, keeping the offsets of the records of each user.
+ * A user is read when it is loaded. When the log grows past the snapshot the file is compacted, that is rewritten
+ * to a temporary file with one USER record per user and atomically renamed over the old one.
+ * A torn record at the end of the log (a crash while appending) is discarded. A failed compaction does not fail the
+ * append that started it, the next one is tried after the log doubles. If the file cannot be reopened after a
+ * compaction, it is reopened on the next call.
+ * <br>
+ * The store is thread safe.
+ */
+final class UserStore {
+
+    //The magic number of the file ("SDKU")
+    private static final int MAGIC = 0x53444B55;
+    //The current version of the format
+    private static final short VERSION = 1;
+    //The size of the header
+    private static final int HEADER_SIZE = 24;
+    //The record types
+    private static final byte USER = 1, STATS = 2, PLAYED = 3;
+    //The log is compacted when it has more records than this and more than the users
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    //The store file
+    private final File file;
+    //The file channel, opened for reading and appending
+    private FileChannel channel;
+    //The offsets of the records of each user, in order
+    private final Map<String, long[]> records = new HashMap<>();
+    //The number of records in the log
+    private int logRecords;
+    //The number of records in the log past which it is compacted, raised after a failed compaction
+    private int compactionThreshold = COMPACTION_THRESHOLD;
+    //The end of the last valid record
+    private long end;
+
+    /**
+     * Opens a store, creating it if it does not exist
+     * @param file The store file
+     * @throws IOException if the file cannot be read or it is not a user store
+     */
+    UserStore(File file) throws IOException {
+        this.file = file;
+        if(!file.exists())
+            write(file, Collections.emptyList());
+        open();
+    }
+
+    /**
+     * Opens the file and reads the index and the log. If it fails the channel is left closed and the users as they
+     * were, until the next try.
+     * @throws IOException if the file cannot be read or it is not a user store
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Map<String, long[]> records = new HashMap<>();
+        int logRecords = 0;
+        long end;
+        try {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if(header.getInt() != MAGIC || header.getShort() != VERSION)
+                throw new IOException(file + ": not a user store");
+            header.getShort();
+            long indexOffset = header.getLong();
+            long logOffset   = header.getLong();
+
+            DataInputStream index = new DataInputStream(new ByteArrayInputStream(read(indexOffset, (int) (logOffset - indexOffset)).array()));
+            for(int n = index.readInt(); n > 0; --n) {
+                String name = index.readUTF();
+                records.put(name, new long[]{index.readLong()});
+            }
+
+            end = logOffset;
+            while(end + 8 <= channel.size()) {  //Scan the log up to the first torn record
+                ByteBuffer prefix = read(end, 8);
+                int length = prefix.getInt();
+                int crc = prefix.getInt();
+                if(length <= 0 || end + 8 + length > channel.size())
+                    break;
+                byte[] payload = read(end + 8, length).array();
+                if(crc(payload) != crc)
+                    break;
+
+                String name = new DataInputStream(new ByteArrayInputStream(payload, 1, length - 1)).readUTF();
+                if(payload[0] == USER)
+                    records.put(name, new long[]{end});
+                else
+                    records.merge(name, new long[]{end}, UserStore::concat);
+                logRecords++;
+                end += 8 + length;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.records.clear();
+        this.records.putAll(records);
+        this.logRecords = logRecords;
+        this.end = end;
+    }
+
+    /**
+     * Reopens the file if a compaction left it closed
+     * @throws IOException if the file cannot be read or it is not a user store
+     */
+    private void ensureOpen() throws IOException {
+        if(!channel.isOpen())
+            open();
+    }
+
+    /**
+     * Reads a part of the file
+     * @param offset    The offset
+     * @param length    The length
+     * @return a buffer with the bytes, ready to be read
+     * @throws IOException if the file ends before
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining())
+            if(channel.read(buffer, offset + buffer.position()) < 0)
+                throw new EOFException(file + ": truncated user store");
+        return buffer.flip();
+    }
+
+    /**
+     * Returns the names of the users, without reading them
+     * @return the names of the users
+     */
+    synchronized Set<String> getNames() {
+        return new HashSet<>(records.keySet());
+    }
+
+    /**
+     * Checks if a user exists
+     * @param name The name of the user
+     * @return true if the user is in the store, false otherwise
+     */
+    synchronized boolean contains(String name) {
+        return records.containsKey(name);
+    }
+
+    /**
+     * Reads a user by replaying its records
+     * @param name The name of the user
+     * @return the user or null if it is not in the store
+     * @throws IOException if the records cannot be read
+     */
+    synchronized User load(String name) throws IOException {
+        ensureOpen();
+        long[] offsets = records.get(name);
+        if(offsets == null)
+            return null;
+
+        int wins = 0, losses = 0;
+        List<String> played = new ArrayList<>();
+        for(long offset : offsets) {
+            int length = read(offset, 4).getInt();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(offset + 8, length).array()));
+            byte type = in.readByte();
+            in.readUTF();
+            if(type == USER) {
+                wins = in.readInt();
+                losses = in.readInt();
+                played.clear();
+                readGames(in, played);
+            } else if(type == STATS) {
+                wins = in.readInt();
+                losses = in.readInt();
+            } else if(type == PLAYED) {
+                readGames(in, played);
+            }
+        }
+        return new User(name, wins, losses, played);
+    }
+
+    /**
+     * Appends the changes of a user to the log, then compacts it if it grew too long
+     * @param name      The name of the user
+     * @param changes   The changes
+     * @throws IOException if appending fails, a failed compaction is only printed
+     */
+    synchronized void append(String name, User.Changes changes) throws IOException {
+        ensureOpen();
+        if(changes.isStatsChanged() || !records.containsKey(name))
+            append(name, record(STATS, name, out -> {
+                out.writeInt(changes.getWins());
+                out.writeInt(changes.getLosses());
+            }));
+        if(!changes.getPlayed().isEmpty())
+            append(name, record(PLAYED, name, out -> writeGames(out, changes.getPlayed())));
+        channel.force(false);
+
+        if(logRecords > compactionThreshold && logRecords > records.size()) {
+            try {
+                compact();
+            } catch (IOException e) {   //The changes are on disk, try again once the log doubles
+                e.printStackTrace();
+                compactionThreshold = 2*logRecords;
+            }
+        }
+    }
+
+    /**
+     * Appends a record, over a torn one if any
+     * @param name      The name of the user
+     * @param record    The record
+     * @throws IOException if writing fails
+     */
+    private void append(String name, byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while(buffer.hasRemaining())
+            channel.write(buffer, end + buffer.position());
+        records.merge(name, new long[]{end}, UserStore::concat);
+        end += record.length;
+        logRecords++;
+        channel.truncate(end);
+    }
+
+    /**
+     * Rewrites the store with one USER record per user
+     * @throws IOException if rewriting fails, the store is left as it was
+     */
+    synchronized void compact() throws IOException {
+        ensureOpen();
+        List<User> users = new ArrayList<>();
+        for(String name : records.keySet())
+            users.add(load(name));
+
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            write(temp, users);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        channel.close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {   //The original is still in place, keep using it
+            try {
+                open();
+            } catch (IOException reopen) {
+                e.addSuppressed(reopen);
+            }
+            try {
+                Files.deleteIfExists(temp.toPath());
+            } catch (IOException delete) {
+                e.addSuppressed(delete);
+            }
+            throw e;
+        }
+        open();
+        compactionThreshold = COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Writes a compacted store
+     * @param target    The file to write
+     * @param users     The users
+     * @throws IOException if writing fails
+     */
+    static void write(File target, Collection<User> users) throws IOException {
+        try(FileOutputStream stream = new FileOutputStream(target);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeLong(0);   //Patched below
+            out.writeLong(0);
+
+            Map<String, Long> offsets = new LinkedHashMap<>();
+            long offset = HEADER_SIZE;
+            for(User user : users) {
+                User.Changes all = user.getAllChanges();
+                byte[] record = record(USER, user.getName(), o -> {
+                    o.writeInt(all.getWins());
+                    o.writeInt(all.getLosses());
+                    writeGames(o, all.getPlayed());
+                });
+                out.write(record);
+                offsets.put(user.getName(), offset);
+                offset += record.length;
+            }
+
+            long indexOffset = offset;
+            out.writeInt(offsets.size());
+            for(Map.Entry<String, Long> entry : offsets.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            long logOffset = out.size();
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(16).putLong(indexOffset).putLong(logOffset).flip();
+            stream.getChannel().write(header, 8);
+            stream.getFD().sync();
+        }
+    }
+
+    /** Writes the payload of a record */
+    private interface PayloadWriter {
+        /**
+         * Writes the part of the payload after the type and the name
+         * @param out The output
+         * @throws IOException if writing fails
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Creates a record
+     * @param type      The type of the record
+     * @param name      The name of the user
+     * @param payload   Writes the rest of the payload
+     * @return the record, with its length and checksum
+     * @throws IOException if writing fails
+     */
+    private static byte[] record(byte type, String name, PayloadWriter payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);    //Length and checksum, patched below
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeUTF(name);
+        payload.write(out);
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(record.length - 8).putInt(crc(Arrays.copyOfRange(record, 8, record.length)));
+        return record;
+    }
+
+    /**
+     * Writes a list of game names
+     * @param out   The output
+     * @param games The names
+     * @throws IOException if writing fails
+     */
+    private static void writeGames(DataOutputStream out, List<String> games) throws IOException {
+        out.writeInt(games.size());
+        for(String game : games)
+            out.writeUTF(game);
+    }
+
+    /**
+     * Reads a list of game names
+     * @param in    The input
+     * @param games Where the names are added
+     * @throws IOException if reading fails
+     */
+    private static void readGames(DataInputStream in, List<String> games) throws IOException {
+        for(int n = in.readInt(); n > 0; --n)
+            games.add(in.readUTF());
+    }
+
+    /**
+     * Computes the checksum of a payload
+     * @param payload The payload
+     * @return the CRC32 of the payload
+     */
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Concatenates two arrays of offsets
+     * @param a The first
+     * @param b The second
+     * @return the offsets of a followed by the offsets of b
+     */
+    private static long[] concat(long[] a, long[] b) {
+        long[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -0,0 +1,81 @@
+package core;
+
+import core.game.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Saves changed users in the background, coalescing the changes of a short period into one write per user */
+final class UserWriter implements User.Listener {
+
+    //How long changes are collected before they are written
+    private static final long FLUSH_DELAY_MILLIS = 1000;
+
+    //The background thread
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "user-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //The users with unsaved changes
+    private final Set<User> pending = ConcurrentHashMap.newKeySet();
+    //Whether a flush is already scheduled
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /** Constructs the writer */
+    UserWriter() {
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);  //On shutdown flush at once instead
+    }
+
+    //Marks the user dirty and schedules a flush if there is none
+    @Override
+    public void userChanged(User user) {
+        pending.add(user);
+        if(scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::scheduledFlush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {    //Shut down, left for the final flush
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /** The scheduled flush */
+    private void scheduledFlush() {
+        scheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Saves the changes of all the dirty users
+     */
+    public synchronized void flush() {
+        List<User> failed = new ArrayList<>();
+        for(User user : pending) {
+            pending.remove(user);       //Changes made from now on mark the user dirty again
+            if(!DiskManager.saveUser(user))
+                failed.add(user);
+        }
+        for(User user : failed)         //Retry with the next flush
+            userChanged(user);
+    }
+
+    /**
+     * Stops the background thread and saves what is still pending
+     */
+    public void shutdown() {
+        executor.shutdown();    //Lets a running flush complete
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,156 @@
+package core.game;
+
+import java.util.*;
+
+/**
+ * The games played by a user, as a set that keeps insertion order.
+ * <br>
+ * Catalog names of the form "#id.suffix" (see {@link core.library.PuzzleLibrary#nameOf}) are kept as one bit per id
+ * in a bitmap per suffix and as one int in the insertion log, other names are kept as strings.
+ * Lookups are O(1) and 100k catalog games take a few hundred kilobytes.
+ */
+public class PlayedGames extends AbstractSet<String> {
+
+    //The bits of a log entry that hold the catalog id, the rest hold the suffix
+    private static final int ID_BITS = 28;
+    //The maximum number of catalog suffixes
+    private static final int MAX_SUFFIXES = 1 << (31 - ID_BITS);
+
+    //The catalog suffixes and the bitmap of played ids of each one
+    private final List<String> suffixes = new ArrayList<>();
+    private final List<BitSet> bitmaps = new ArrayList<>();
+    //The other names, and the same names in insertion order
+    private final Set<String> names = new HashSet<>();
+    private final List<String> namesInOrder = new ArrayList<>();
+    //The insertion log: suffix << ID_BITS | id for catalog names, -(position in namesInOrder + 1) for others
+    private int[] log = new int[16];
+    private int size;
+
+    /** Constructs an empty set */
+    public PlayedGames() {
+    }
+
+    /**
+     * Constructs the set with the given names, in iteration order. Empty names are ignored.
+     * @param played The names
+     */
+    public PlayedGames(Collection<String> played) {
+        for(String name : played)
+            if(!name.isEmpty())
+                add(name);
+    }
+
+    /**
+     * Parses the id of a catalog name
+     * @param name The name
+     * @return the id or -1 if the name is not a catalog name
+     */
+    private static int catalogId(String name) {
+        int dot = name.indexOf('.');
+        if(name.length() < 3 || name.charAt(0) != '#' || dot < 2 || dot > 10 || dot == name.length() - 1)
+            return -1;
+
+        long id = 0;
+        for(int k = 1; k < dot; ++k) {
+            char c = name.charAt(k);
+            if(c < '0' || c > '9' || (c == '0' && k == 1 && dot > 2))   //Only canonical decimals
+                return -1;
+            id = id*10 + (c - '0');
+        }
+        return id < (1 << ID_BITS) ? (int) id : -1;
+    }
+
+    /**
+     * Finds a catalog suffix
+     * @param name  The catalog name
+     * @param add   Add the suffix if missing
+     * @return the index of the suffix, -1 if missing or there is no room for it
+     */
+    private int suffixOf(String name, boolean add) {
+        int dot = name.indexOf('.');
+        for(int s = 0; s < suffixes.size(); ++s)
+            if(name.startsWith(suffixes.get(s), dot + 1) && name.length() - dot - 1 == suffixes.get(s).length())
+                return s;
+
+        if(!add || suffixes.size() == MAX_SUFFIXES)
+            return -1;
+        suffixes.add(name.substring(dot + 1));
+        bitmaps.add(new BitSet());
+        return suffixes.size() - 1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if(!(o instanceof String))
+            return false;
+        String name = (String) o;
+
+        int id = catalogId(name);
+        if(id != -1) {
+            int s = suffixOf(name, false);
+            if(s != -1)
+                return bitmaps.get(s).get(id);
+        }
+        return names.contains(name);
+    }
+
+    @Override
+    public boolean add(String name) {
+        if(contains(name))
+            return false;
+
+        int id = catalogId(name);
+        int s = id == -1 ? -1 : suffixOf(name, true);
+        int entry;
+        if(s != -1) {                       //Catalog name
+            bitmaps.get(s).set(id);
+            entry = s << ID_BITS | id;
+        } else {                            //Other name
+            names.add(name);
+            namesInOrder.add(name);
+            entry = -namesInOrder.size();
+        }
+
+        if(size == log.length)
+            log = Arrays.copyOf(log, size*2);
+        log[size++] = entry;
+        return true;
+    }
+
+    /**
+     * Returns the name of a log entry
+     * @param entry The entry
+     * @return the name
+     */
+    private String nameOf(int entry) {
+        if(entry < 0)
+            return namesInOrder.get(-entry - 1);
+        return "#" + (entry & ((1 << ID_BITS) - 1)) + "." + suffixes.get(entry >>> ID_BITS);
+    }
+
+    //Iterates in insertion order, removal is not supported
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            //The next entry
+            private int k = 0;
+
+            @Override
+            public boolean hasNext() {
+                return k < size;
+            }
+
+            @Override
+            public String next() {
+                if(k >= size)
+                    throw new NoSuchElementException();
+                return nameOf(log[k++]);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
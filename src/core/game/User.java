@@ -4,7 +4,11 @@ import core.game.sudoku.Sudoku;
 
 import java.util.*;
 
-/** Represents a user of the game */
+/**
+ * Represents a user of the game
+ * <br>
+ * A user may be changed on one thread and saved on an other, so its state is guarded by its monitor.
+ */
 public class User {
     
     //The default user
@@ -13,10 +17,17 @@ public class User {
     //The name of the user
     private final String name;
     //The played games of the user
-    private final List<String> played;
+    private final PlayedGames played;
     //Wins and losses of the user from an AI
     private int wins, losses;
     
+    //The number of played games already saved
+    private int savedPlayed;
+    //Incremented on every change of the stats, and its value when last saved
+    private int statsVersion = 0, savedStatsVersion = 0;
+    //Notified on every change (may be null)
+    private Listener listener = null;
+    
     /**
      * Constructs the user given the stats
      * @param name      The name of the user
@@ -24,11 +35,12 @@ public class User {
      * @param losses    The losses of the user
      * @param played    The games played by the user
      */
-    public User(String name, int wins, int losses, List<String> played) {
+    public User(String name, int wins, int losses, Collection<String> played) {
         this.name = name;
         this.wins = wins;
         this.losses = losses;
-        this.played = new LinkedList<>(played);
+        this.played = new PlayedGames(played);
+        this.savedPlayed = this.played.size();  //Considered saved as given
     }
     
     /**
@@ -43,29 +55,84 @@ public class User {
      * Adds the game to the played list
      * @param game The game to add
      */
-    public void played(Sudoku game) {
-        played.add(game.getName());
+    public synchronized void played(Sudoku game) {
+        if(played.add(game.getName()))
+            changed();
     }
     
     /**
      * Increments the wins of the user
      */
-    public void won() {
+    public synchronized void won() {
         wins++;
+        statsVersion++;
+        changed();
     }
     
     /**
      * Increments the losses of the user
      */
-    public void lost() {
+    public synchronized void lost() {
         losses++;
+        statsVersion++;
+        changed();
+    }
+    
+    /**
+     * Marks the whole user as changed, so that it is saved in full (for example a new user)
+     */
+    public synchronized void markDirty() {
+        statsVersion++;
+        changed();
+    }
+    
+    /**
+     * Notifies the listener of a change
+     */
+    private void changed() {
+        if(listener != null)
+            listener.userChanged(this);
+    }
+    
+    /**
+     * Sets the listener notified on every change
+     * @param listener The listener or null
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Captures the changes since the last save
+     * @return the unsaved changes of the user
+     */
+    public synchronized Changes getChanges() {
+        return new Changes(this, false);
+    }
+    
+    /**
+     * Captures the whole user as changes, as if nothing was saved
+     * @return the whole user
+     */
+    public synchronized Changes getAllChanges() {
+        return new Changes(this, true);
+    }
+    
+    /**
+     * Marks the captured changes as saved
+     * @param changes The changes that were saved
+     */
+    public synchronized void markSaved(Changes changes) {
+        savedPlayed = Math.max(savedPlayed, changes.playedCount);
+        if(changes.statsChanged)
+            savedStatsVersion = Math.max(savedStatsVersion, changes.statsVersion);
     }
     
     /**
      * Getter for the losses
      * @return the losses
      */
-    public int getLosses() {
+    public synchronized int getLosses() {
         return losses;
     }
     
@@ -73,16 +140,25 @@ public class User {
      * Getter for the wins
      * @return the wins
      */
-    public int getWins() {
+    public synchronized int getWins() {
         return wins;
     }
     
+    /**
+     * Checks in O(1) if the user has played a game
+     * @param game The name of the game
+     * @return true if the game is in the played games, false otherwise
+     */
+    public synchronized boolean hasPlayed(String game) {
+        return played.contains(game);
+    }
+    
     /**
      * Getter for the played games
-     * @return the played games
+     * @return a copy of the played games, in the order they were played
      */
-    public List<String> getPlayed() {
-        return played;
+    public synchronized List<String> getPlayed() {
+        return new ArrayList<>(played);
     }
     
     /**
@@ -108,4 +184,87 @@ public class User {
     public int hashCode() {
         return name.hashCode();
     }
+    
+    /** Listens to the changes of a user */
+    public interface Listener {
+        /**
+         * Called after every change of a user, while holding its monitor
+         * @param user The changed user
+         */
+        void userChanged(User user);
+    }
+    
+    /** The changes of a user since it was last saved */
+    public static final class Changes {
+        
+        //The stats of the user
+        private final int wins, losses;
+        //Whether the stats changed and the version they are at
+        private final boolean statsChanged;
+        private final int statsVersion;
+        //The played games that were not saved
+        private final List<String> played;
+        //The number of played games captured
+        private final int playedCount;
+        
+        /**
+         * Captures the changes of a user, while holding its monitor
+         * @param user  The user
+         * @param all   Capture the whole user, as if nothing was saved
+         */
+        private Changes(User user, boolean all) {
+            wins = user.wins;
+            losses = user.losses;
+            statsChanged = all || user.statsVersion != user.savedStatsVersion;
+            statsVersion = user.statsVersion;
+            playedCount = user.played.size();
+            
+            int saved = all ? 0 : user.savedPlayed;
+            played = new ArrayList<>(playedCount - saved);
+            int k = 0;
+            for(String game : user.played)
+                if(k++ >= saved)
+                    played.add(game);
+        }
+        
+        /**
+         * Checks if there is anything to save
+         * @return true if nothing changed, false otherwise
+         */
+        public boolean isEmpty() {
+            return !statsChanged && played.isEmpty();
+        }
+        
+        /**
+         * Checks if the stats changed
+         * @return true if the stats changed, false if only new games were played
+         */
+        public boolean isStatsChanged() {
+            return statsChanged;
+        }
+        
+        /**
+         * Getter for the wins
+         * @return the wins of the user
+         */
+        public int getWins() {
+            return wins;
+        }
+        
+        /**
+         * Getter for the losses
+         * @return the losses of the user
+         */
+        public int getLosses() {
+            return losses;
+        }
+        
+        /**
+         * Getter for the played games
+         * @return the games played since the last save, in order
+         */
+        public List<String> getPlayed() {
+            return played;
+        }
+    }
 }
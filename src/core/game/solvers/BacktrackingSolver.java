@@ -2,10 +2,28 @@ package core.game.solvers;
 
 import core.game.sudoku.Sudoku;
 
-/** Solves the sudoku game by the recursive backtracking approach */
+/** Solves the sudoku game by the recursive backtracking approach, giving up if the thread is interrupted */
 public class BacktrackingSolver implements SudokuSolver {
     
+    //Searches inside a single batch, so listeners of the game see only the result
     public boolean solve(Sudoku game) {
+        game.beginBatch();
+        try {
+            return search(game);
+        } finally {
+            game.endBatch();
+        }
+    }
+    
+    /**
+     * Solves the game recursively
+     * @param game The game
+     * @return true if the game was solved, false otherwise
+     */
+    private boolean search(Sudoku game) {
+        if( Thread.currentThread().isInterrupted() )  //Cancelled, unwind
+            return false;
+        
         Placer placer = new MemoryPlacer(game);
         int i = placer.getIndex();
         
@@ -13,7 +31,7 @@ public class BacktrackingSolver implements SudokuSolver {
             return true;
         
         while(placer.placeNext())
-            if(solve(game))
+            if(search(game))
                 return true;
             else
                 placer.reset();
@@ -0,0 +1,94 @@
+package core.game.solvers;
+
+import core.game.sudoku.KillerSudoku;
+import core.game.sudoku.Sudoku;
+
+/**
+ * Solves the sudoku game by backtracking on the empty cell with the fewest candidates.
+ * <br>
+ * Works on any variant through {@link Sudoku#getCandidates(int)}, so the cages of a killer sudoku prune the search
+ * as well. Supports boards up to {@link Sudoku#MAX_CANDIDATE_DIMENSION}. Gives up if the thread is interrupted.
+ * <br>
+ * On a {@link KillerSudoku} every step first narrows the candidates with the cage rules of {@link KillerPropagator},
+ * which solves most killer boards with little or no branching.
+ */
+public class CandidateSolver implements SudokuSolver {
+
+    //Searches inside a single batch, so listeners of the game see only the result
+    @Override
+    public boolean solve(Sudoku game) {
+        game.beginBatch();
+        try {
+            return search(game, propagatorOf(game), 1, true) == 1;
+        } finally {
+            game.endBatch();
+        }
+    }
+
+    /**
+     * Counts the solutions of a game, up to a limit
+     * @param game  The game, left as it was
+     * @param limit The number of solutions to stop at
+     * @return the number of solutions, at most limit
+     */
+    public static int count(Sudoku game, int limit) {
+        if(limit <= 0)
+            return 0;
+        game.beginBatch();
+        try {
+            return search(game, propagatorOf(game), limit, false);
+        } finally {
+            game.endBatch();
+        }
+    }
+
+    /**
+     * Creates the propagator of a game
+     * @param game The game
+     * @return the propagator of the cages of a killer sudoku, null for the other variants
+     */
+    private static KillerPropagator propagatorOf(Sudoku game) {
+        if(!(game instanceof KillerSudoku) || game.getBoardDimension() > Sudoku.MAX_CANDIDATE_DIMENSION)
+            return null;
+        return new KillerPropagator((KillerSudoku) game);
+    }
+
+    /**
+     * Searches the solutions recursively
+     * @param game          The game
+     * @param propagator    The propagator of the game, null for none
+     * @param limit         The number of solutions to stop at
+     * @param keep          Leave the first solution on the board
+     * @return the number of solutions found, at most limit
+     */
+    private static int search(Sudoku game, KillerPropagator propagator, int limit, boolean keep) {
+        if(Thread.currentThread().isInterrupted())  //Cancelled, unwind
+            return 0;
+        int d = game.getBoardDimension();
+        long[] candidates = null;
+        if(propagator != null && !propagator.narrow(candidates = new long[d*d]))
+            return 0;
+        int best = -1, fewest = d + 1;
+        for(int i = game.findEmptyCell(0); i != -1 && fewest > 1; i = game.findEmptyCell(i + 1)) {
+            int count = Long.bitCount(candidates == null ? game.getCandidates(i) : candidates[i]);
+            if(count < fewest) {
+                best = i;
+                fewest = count;
+            }
+        }
+        if(best == -1)                  //Full
+            return game.isComplete() ? 1 : 0;
+
+        int found = 0;
+        long options = candidates == null ? game.getCandidates(best) : candidates[best];
+        for(long rest = options; rest != 0 && found < limit; rest &= rest - 1) {
+            if(!game.place(best, Long.numberOfTrailingZeros(rest) + 1))
+                continue;
+            found += search(game, propagator, limit - found, keep);
+            if(keep && found > 0)
+                return found;
+            game.reset(best);
+        }
+        return found;
+    }
+}
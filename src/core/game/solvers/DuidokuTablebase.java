@@ -0,0 +1,421 @@
+package core.game.solvers;
+
+import core.game.sudoku.Duidoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * The solved 4x4 duidoku: the outcome of perfect play from every position.
+ * <br>
+ * A position is a board without repeats in a unit; the side to move is the one that cannot move at the end loses. The
+ * positions are enumerated from the empty board one move at a time, keeping one position per class of symmetric ones
+ * (the 128 row, column and transpose symmetries of the board times the 24 relabelings of the values). The outcomes
+ * are then solved backwards, from the full boards to the empty one: a position only leads to positions with one more
+ * value, so each layer is solved from the one after it, its positions in parallel.
+ * <br>
+ * The outcomes are kept in a memory mapped hash table, so a lookup is a few probes:
+ * <pre>
+ * header   : magic(int) version(short) reserved(short) count(int) capacity(int)
+ * slots    : capacity longs, 0 for none, else 1 &lt;&lt; 63 | (value &amp; 0xFF) &lt;&lt; 48 | position
+ * </pre>
+ * A position packs 3 bits per cell, cell k at bit 3k, in its symmetric form with the smallest number. The value is
+ * signed: n &gt; 0 if the side to move wins in n moves, -n if it loses in n moves (0 if it cannot move).
+ * <br>
+ * {@link #get()} maps {@link #DEFAULT_FILE} on first use, building it if it is missing, so that nothing is loaded
+ * before a perfect player is needed.
+ */
+public final class DuidokuTablebase {
+
+    /** The magic number of the table file ("DUTB") */
+    static final int MAGIC = 0x44555442;
+    /** The current version of the file format */
+    static final short VERSION = 1;
+    /** The size of the header in bytes */
+    static final int HEADER_SIZE = 16;
+    /** The default table file */
+    public static final File DEFAULT_FILE = new File("data", "duidoku.tb");
+
+    //The board and box dimensions and the number of cells of the solved board
+    private static final int D = 4, B = 2, CELLS = D*D;
+    //The bits of a cell in a position
+    private static final int BITS = 3;
+    //The geometric symmetries, as the source cell of each cell
+    private static final int[][] SYMMETRIES = symmetries();
+    //The units of each cell: its row, column and box
+    private static final int[][] UNITS_OF = new int[CELLS][];
+    static {
+        for(int c = 0; c < CELLS; ++c)
+            UNITS_OF[c] = new int[]{c/D, D + c%D, 2*D + (c%D)/B + (c/D)/B*(D/B)};
+    }
+
+    //The slots of the table
+    private final LongBuffer slots;
+    //The number of positions
+    private final int count;
+
+    /** The default table, mapped on first use */
+    private static final class Default {
+        static final DuidokuTablebase TABLE = loadOrBuild(DEFAULT_FILE);
+    }
+
+    /**
+     * Builds the table and saves it
+     * <br>
+     * Usage: DuidokuTablebase [file]
+     * @param args The file, {@link #DEFAULT_FILE} if none
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        File file = args.length > 0 ? new File(args[0]) : DEFAULT_FILE;
+        long start = System.nanoTime();
+        DuidokuTablebase table = build();
+        table.save(file);
+        System.err.printf("%d positions in %.1f s, empty board %+d%n", table.count,
+                (System.nanoTime() - start)/1e9, table.value(0));
+    }
+
+    /**
+     * Returns the default table, mapping {@link #DEFAULT_FILE} on the first call. If the file is missing or not a
+     * valid table it is built (in a few seconds) and saved; if it cannot be saved the table stays in memory.
+     * @return the table
+     */
+    public static DuidokuTablebase get() {
+        return Default.TABLE;
+    }
+
+    /**
+     * Maps a table file, building and saving it if that fails
+     * @param file The file
+     * @return the table
+     */
+    private static DuidokuTablebase loadOrBuild(File file) {
+        if(file.exists()) {
+            try {
+                return load(file);
+            } catch(IOException e) {    //If not valid build it again
+                e.printStackTrace();
+            }
+        }
+        DuidokuTablebase table = build();
+        try {
+            table.save(file);
+            return load(file);
+        } catch(IOException e) {
+            e.printStackTrace();
+            return table;
+        }
+    }
+
+    /**
+     * Maps a table file
+     * @param file The file
+     * @return the table
+     * @throws IOException if the file cannot be mapped or it is not a valid table
+     */
+    public static DuidokuTablebase load(File file) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE)
+                throw new IOException(file + ": not a duidoku table");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //The mapping stays valid after closing
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if(buffer.getInt(0) != MAGIC)
+            throw new IOException(file + ": not a duidoku table");
+        if(buffer.getShort(4) != VERSION)
+            throw new IOException(file + ": unsupported table version " + buffer.getShort(4));
+        int count = buffer.getInt(8), capacity = buffer.getInt(12);
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1 || count >= capacity
+                || HEADER_SIZE + 8L*capacity != buffer.capacity())
+            throw new IOException(file + ": truncated duidoku table");
+        return new DuidokuTablebase(buffer.position(HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer(),
+                count);
+    }
+
+    /**
+     * Wraps the slots of a table
+     * @param slots The slots, a power of two of them
+     * @param count The number of positions
+     */
+    private DuidokuTablebase(LongBuffer slots, int count) {
+        this.slots = slots;
+        this.count = count;
+    }
+
+    /**
+     * Solves every position, in memory
+     * @return the table
+     */
+    public static DuidokuTablebase build() {
+        //The positions one move at a time, sorted
+        long[][] layers = new long[CELLS + 1][];
+        layers[0] = new long[]{0};
+        for(int filled = 0; filled < CELLS; ++filled)
+            layers[filled + 1] = Arrays.stream(layers[filled]).parallel()
+                    .flatMap(position -> LongStream.of(successors(position)))
+                    .map(DuidokuTablebase::canonical)
+                    .distinct().sorted().toArray();
+
+        //The values backwards, from the full boards
+        byte[][] values = new byte[CELLS + 1][];
+        values[CELLS] = new byte[layers[CELLS].length];
+        for(int filled = CELLS - 1; filled >= 0; --filled) {
+            long[] layer = layers[filled], next = layers[filled + 1];
+            byte[] nextValues = values[filled + 1], layerValues = values[filled] = new byte[layer.length];
+            IntStream.range(0, layer.length).parallel().forEach(k -> {
+                int best = 0;
+                boolean any = false;
+                for(long successor : successors(layer[k])) {
+                    int value = nextValues[Arrays.binarySearch(next, canonical(successor))];
+                    best = !any || better(value, best) ? value : best;
+                    any = true;
+                }
+                layerValues[k] = (byte) (any ? after(best) : 0);
+            });
+        }
+
+        int count = 0;
+        for(long[] layer : layers)
+            count += layer.length;
+        int capacity = Integer.highestOneBit(count)*4;     //At most half full
+        LongBuffer slots = LongBuffer.allocate(capacity);
+        for(int filled = 0; filled <= CELLS; ++filled)
+            for(int k = 0; k < layers[filled].length; ++k) {
+                int slot = slotOf(layers[filled][k], capacity);
+                while(slots.get(slot) != 0)
+                    slot = (slot + 1) & (capacity - 1);
+                slots.put(slot, 1L << 63 | (values[filled][k] & 0xFFL) << 48 | layers[filled][k]);
+            }
+        return new DuidokuTablebase(slots, count);
+    }
+
+    /**
+     * Saves the table, replacing the file at once
+     * @param file The file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException(parent + ": cannot be created");
+        File temp = new File(file.getPath() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8*slots.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(count).putInt(slots.capacity());
+        for(int slot = 0; slot < slots.capacity(); ++slot)
+            buffer.putLong(slots.get(slot));
+        buffer.flip();
+        try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Getter for the number of positions
+     * @return the number of positions, one per class of symmetric ones
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the outcome of a game for the side to move
+     * @param game The game, on a 4x4 board
+     * @return n &gt; 0 if the side to move wins in n moves, -n if it loses in n moves
+     * @throws IllegalArgumentException if the board is not 4x4 with 2x2 boxes or repeats a value in a unit
+     */
+    public int value(Duidoku game) {
+        return value(canonical(positionOf(game)));
+    }
+
+    /**
+     * Finds the best move of the side to move: the quickest win, or else the slowest loss
+     * @param game The game, on a 4x4 board
+     * @return the move as i*4 + v - 1 for the value v on the raw index i, -1 if there is none
+     * @throws IllegalArgumentException if the board is not 4x4 with 2x2 boxes or repeats a value in a unit
+     */
+    public int bestMove(Duidoku game) {
+        long position = positionOf(game);
+        int move = -1, best = 0;
+        for(int candidate : game.listMoves()) {
+            int value = value(canonical(position | (long) (candidate%D + 1) << BITS*(candidate/D)));
+            if(move == -1 || better(value, best)) {
+                move = candidate;
+                best = value;
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Looks up a position
+     * @param canonical The position, in its symmetric form with the smallest number
+     * @return its value
+     * @throws IllegalArgumentException if the table does not have the position
+     */
+    private int value(long canonical) {
+        int capacity = slots.capacity();
+        for(int slot = slotOf(canonical, capacity); ; slot = (slot + 1) & (capacity - 1)) {
+            long entry = slots.get(slot);
+            if(entry == 0)
+                throw new IllegalArgumentException("Not a duidoku position");
+            if((entry & (1L << 48) - 1) == canonical)
+                return (byte) (entry >>> 48);
+        }
+    }
+
+    /**
+     * Returns the first slot to probe for a position
+     * @param position  The position
+     * @param capacity  The number of slots, a power of two
+     * @return the slot
+     */
+    private static int slotOf(long position, int capacity) {
+        return (int) (position*0x9E3779B97F4A7C15L >>> 32) & (capacity - 1);
+    }
+
+    /**
+     * Checks if the position after a move is better for the mover than after an other
+     * @param value The value of the position after the move, for the opponent
+     * @param other The value of the position after the other move
+     * @return true if the move wins quicker, or loses slower, than the other
+     */
+    private static boolean better(int value, int other) {
+        if((value <= 0) != (other <= 0))
+            return value <= 0;      //The opponent loses
+        return value > other;       //Quicker opponent loss, or slower opponent win
+    }
+
+    /**
+     * Returns the value of a position from the value of its best move
+     * @param best The value of the position after the best move, for the opponent
+     * @return the value of the position
+     */
+    private static int after(int best) {
+        return best <= 0 ? 1 - best : -1 - best;
+    }
+
+    /**
+     * Packs the board of a game
+     * @param game The game
+     * @return the position
+     * @throws IllegalArgumentException if the board is not 4x4 with 2x2 boxes or repeats a value in a unit
+     */
+    private static long positionOf(Duidoku game) {
+        if(game.getBoardDimension() != D || game.getBoxDimension() != B)
+            throw new IllegalArgumentException("Duidoku is not 4x4 with 2x2 boxes");
+        if(game.hasConflicts())
+            throw new IllegalArgumentException("Not a duidoku position");
+        long position = 0;
+        for(int c = 0; c < CELLS; ++c)
+            if(!game.isCellEmpty(game.get(c)))
+                position |= (long) game.get(c) << BITS*c;
+        return position;
+    }
+
+    /**
+     * Lists the positions after every move
+     * @param position The position
+     * @return the positions, not canonical
+     */
+    private static long[] successors(long position) {
+        long[] used = new long[3*D];        //The values of each unit, bit v - 1 for v
+        for(int c = 0; c < CELLS; ++c) {
+            int v = (int) (position >>> BITS*c & 7);
+            if(v != 0)
+                for(int u : UNITS_OF[c])
+                    used[u] |= 1L << (v - 1);
+        }
+        long[] successors = new long[CELLS*D];
+        int n = 0;
+        for(int c = 0; c < CELLS; ++c) {
+            if((position >>> BITS*c & 7) != 0)
+                continue;
+            long free = ~(used[UNITS_OF[c][0]] | used[UNITS_OF[c][1]] | used[UNITS_OF[c][2]]) & (1L << D) - 1;
+            for(; free != 0; free &= free - 1)
+                successors[n++] = position | (long) (Long.numberOfTrailingZeros(free) + 1) << BITS*c;
+        }
+        return Arrays.copyOf(successors, n);
+    }
+
+    /**
+     * Finds the symmetric form of a position with the smallest number: for each geometric symmetry, the values are
+     * relabeled in the order they first appear from the last cell, which makes that symmetry's number the smallest
+     * @param position The position
+     * @return the canonical position
+     */
+    static long canonical(long position) {
+        int[] cells = new int[CELLS];
+        for(int c = 0; c < CELLS; ++c)
+            cells[c] = (int) (position >>> BITS*c & 7);
+        long best = Long.MAX_VALUE;
+        int[] labels = new int[D + 1];
+        for(int[] symmetry : SYMMETRIES) {
+            Arrays.fill(labels, 0);
+            int next = 1;
+            long image = 0;
+            boolean smaller = false;
+            int c = CELLS - 1;
+            for(; c >= 0; --c) {
+                int v = cells[symmetry[c]];
+                if(v != 0 && labels[v] == 0)
+                    labels[v] = next++;
+                image = image << BITS | labels[v];
+                if(!smaller) {      //Stop as soon as the image is larger than the best so far
+                    long prefix = best >>> BITS*c;
+                    if(image > prefix)
+                        break;
+                    smaller = image < prefix;
+                }
+            }
+            if(c < 0)
+                best = Math.min(best, image);
+        }
+        return best;
+    }
+
+    /**
+     * Lists the geometric symmetries of the board: the swaps of the bands, of the rows in each band, the same for the
+     * columns, and the transpose
+     * @return the source cell of each cell, for each symmetry
+     */
+    private static int[][] symmetries() {
+        int[][] lines = new int[8][];      //The orders of the rows (or columns) that keep the bands
+        for(int s = 0; s < 8; ++s) {
+            int[] bands = (s & 1) == 0 ? new int[]{0, 1} : new int[]{1, 0};
+            lines[s] = new int[D];
+            for(int k = 0; k < D; ++k) {
+                int band = bands[k/B], line = k%B;
+                if((s >> 1 + band & 1) != 0)
+                    line = B - 1 - line;
+                lines[s][k] = band*B + line;
+            }
+        }
+        int[][] symmetries = new int[2*8*8][CELLS];
+        int n = 0;
+        for(int transpose = 0; transpose < 2; ++transpose)
+            for(int[] rows : lines)
+                for(int[] columns : lines) {
+                    for(int c = 0; c < CELLS; ++c) {
+                        int row = rows[c/D], column = columns[c%D];
+                        symmetries[n][c] = transpose == 0 ? column + row*D : row + column*D;
+                    }
+                    ++n;
+                }
+        return symmetries;
+    }
+}
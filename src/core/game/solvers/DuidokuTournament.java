@@ -0,0 +1,404 @@
+package core.game.solvers;
+
+import core.game.User;
+import core.game.sudoku.Duidoku;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays duidoku games between players, without the window, to compare their strength and speed.
+ * <br>
+ * Every player plays every other one a number of games as the first player and as many as the second. The games run
+ * in parallel, each with its own randomness seeded from the seed of the tournament and the number of the game, so a
+ * tournament with the same seed gives the same results on any number of threads. A player that returns an illegal
+ * move loses the game.
+ * <br>
+ * The report gives the win rate of each player and of each pairing with its 95% (Wilson) confidence interval, and
+ * the moves per second and the percentiles of the time of a move of each player.
+ */
+public final class DuidokuTournament {
+
+    /**
+     * Runs a tournament and writes its report as JSON
+     * <br>
+     * Usage: DuidokuTournament [--players a,b,...] [--games n] [--threads n] [--seed n] [--out file]
+     * <br>
+     * A player is the name of a {@link Duidoku.Level} or the class name of a {@link Duidoku.Player} with a public
+     * constructor without arguments; all the levels play by default.
+     * @param args The options
+     * @throws Exception if a player cannot be created, a game fails or the report cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        String players = null;
+        int games = DEFAULT_GAMES, threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        File out = new File(DEFAULT_REPORT);
+        for(int a = 0; a < args.length; ++a) {
+            if(a + 1 < args.length && args[a].equals("--players"))
+                players = args[++a];
+            else if(a + 1 < args.length && args[a].equals("--games"))
+                games = Integer.parseInt(args[++a]);
+            else if(a + 1 < args.length && args[a].equals("--threads"))
+                threads = Integer.parseInt(args[++a]);
+            else if(a + 1 < args.length && args[a].equals("--seed"))
+                seed = Long.parseLong(args[++a]);
+            else if(a + 1 < args.length && args[a].equals("--out"))
+                out = new File(args[++a]);
+            else {
+                System.err.println("Usage: DuidokuTournament [--players a,b,...] [--games n] [--threads n] [--seed n] [--out file]");
+                System.exit(1);
+            }
+        }
+
+        Map<String, Duidoku.Player> entrants = new LinkedHashMap<>();
+        if(players == null)
+            for(Duidoku.Level level : Duidoku.Level.values())
+                entrants.put(level.name().toLowerCase(), level);
+        else
+            for(String name : players.split(","))
+                entrants.put(name, playerOf(name));
+
+        DuidokuTournament tournament = new DuidokuTournament(entrants, games, seed);
+        String report = tournament.run(threads);
+        Files.write(out.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        System.out.print(report);
+    }
+
+    //The default games of a player against an other as the first player, and the default report file
+    public static final int DEFAULT_GAMES = 1000;
+    public static final String DEFAULT_REPORT = "duidoku-tournament.json";
+    //The games of a task
+    private static final int BLOCK = 100;
+    //The z of a 95% confidence interval
+    private static final double Z = 1.96;
+
+    //The names of the players, and the players
+    private final String[] names;
+    private final Duidoku.Player[] players;
+    //The games of each player against each other as the first player
+    private final int games;
+    //The seed
+    private final long seed;
+
+    /**
+     * Constructs a tournament
+     * @param players   The players by name, which must be safe to use from many threads at once
+     * @param games     The games of each player against each other as the first player
+     * @param seed      The seed of the randomness of the games
+     */
+    public DuidokuTournament(Map<String, ? extends Duidoku.Player> players, int games, long seed) {
+        if(players == null)
+            throw new NullPointerException("Players is null");
+        if(players.size() < 2)
+            throw new IllegalArgumentException("Players are fewer than two");
+        if(games <= 0)
+            throw new IllegalArgumentException("Games is not positive");
+        this.names = players.keySet().toArray(new String[0]);
+        this.players = players.values().toArray(new Duidoku.Player[0]);
+        this.games = games;
+        this.seed = seed;
+    }
+
+    /**
+     * Plays the tournament
+     * @param threads The number of games played at once
+     * @return the report, as JSON
+     * @throws InterruptedException if interrupted while waiting for the games
+     * @throws ExecutionException if a player fails
+     */
+    public String run(int threads) throws InterruptedException, ExecutionException {
+        if(threads <= 0)
+            throw new IllegalArgumentException("Threads is not positive");
+        for(Duidoku.Player player : players)    //Load what the players load on first use, out of the timings
+            player.nextMove(new Duidoku(new User("tournament")), new Random(seed));
+
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "duidoku-tournament-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        int p = players.length;
+        List<Future<Block>> blocks = new ArrayList<>();
+        try {
+            for(int first = 0; first < p; ++first)
+                for(int second = 0; second < p; ++second)
+                    if(first != second) {
+                        int pairing = first*p + second;
+                        for(int g = 0; g < games; g += BLOCK) {
+                            int from = g, to = Math.min(games, g + BLOCK), a = first, b = second;
+                            blocks.add(executor.submit(() -> play(pairing, a, b, from, to)));
+                        }
+                    }
+
+            //Merge the blocks in order, so the results do not depend on the threads
+            int[] firstWins = new int[p*p];
+            Latencies[] latencies = new Latencies[p];
+            for(int k = 0; k < p; ++k)
+                latencies[k] = new Latencies();
+            for(Future<Block> future : blocks) {
+                Block block = future.get();
+                firstWins[block.pairing] += block.firstWins;
+                latencies[block.pairing/p].add(block.first);
+                latencies[block.pairing%p].add(block.second);
+            }
+            return report(firstWins, latencies, threads, (System.nanoTime() - start)/1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays a block of games of a pairing
+     * @param pairing   The pairing, first*players + second
+     * @param first     The first player
+     * @param second    The second player
+     * @param from      The first game
+     * @param to        The game after the last
+     * @return the results
+     */
+    private Block play(int pairing, int first, int second, int from, int to) {
+        Block block = new Block(pairing);
+        for(int g = from; g < to; ++g) {
+            Random random = new Random(seed ^ (pairing*(long) games + g)*0x9E3779B97F4A7C15L);
+            Duidoku game = new Duidoku(new User("tournament"));
+            int d = game.getBoardDimension();
+            boolean[] forfeit = new boolean[2];
+            game.setOpponent((ignored, unused) -> {     //The game asks the second player within the move of the first
+                if(!game.hasMoves())
+                    return -1;
+                int move = timedMove(players[second], game, random, block.second);
+                forfeit[1] = !legal(game, move);
+                return forfeit[1] ? -1 : move;
+            });
+            while(!game.isComplete() && !forfeit[1]) {
+                int move = timedMove(players[first], game, random, block.first);
+                if(!legal(game, move)) {
+                    forfeit[0] = true;
+                    break;
+                }
+                game.place(move/d, move%d + 1);
+            }
+            //The side to move when the game ends lost, unless a player forfeited
+            if(forfeit[1] || (!forfeit[0] && !game.isPlayerMove()))
+                ++block.firstWins;
+        }
+        return block;
+    }
+
+    /**
+     * Asks a player for a move, timing it
+     * @param player    The player
+     * @param game      The game
+     * @param random    The randomness of the game
+     * @param latencies Where to record the time of the move
+     * @return the move
+     */
+    private static int timedMove(Duidoku.Player player, Duidoku game, Random random, Latencies latencies) {
+        long start = System.nanoTime();
+        int move = player.nextMove(game, random);
+        latencies.add(System.nanoTime() - start);
+        return move;
+    }
+
+    /**
+     * Checks if a move is legal
+     * @param game  The game
+     * @param move  The move as i*d + v - 1
+     * @return true if the move can be placed, false otherwise
+     */
+    private static boolean legal(Duidoku game, int move) {
+        int d = game.getBoardDimension();
+        return move >= 0 && move < d*d*d && (game.getMoves(move/d) & 1L << move%d) != 0;
+    }
+
+    /**
+     * Writes the report
+     * @param firstWins The wins of the first player of each pairing
+     * @param latencies The times of the moves of each player
+     * @param threads   The number of threads
+     * @param seconds   The time of the tournament
+     * @return the report, as JSON
+     */
+    private String report(int[] firstWins, Latencies[] latencies, int threads, double seconds) {
+        int p = players.length;
+        long moves = 0;
+        for(Latencies player : latencies)
+            moves += player.size;
+        StringBuilder out = new StringBuilder();
+        out.append("{\n");
+        out.append("  \"seed\": ").append(seed).append(",\n");
+        out.append("  \"games_per_pairing\": ").append(games).append(",\n");
+        out.append("  \"threads\": ").append(threads).append(",\n");
+        out.append("  \"seconds\": ").append(number(seconds)).append(",\n");
+        out.append("  \"games_per_second\": ").append(number(p*(p - 1)*(long) games/seconds)).append(",\n");
+        out.append("  \"moves_per_second\": ").append(number(moves/seconds)).append(",\n");
+
+        out.append("  \"players\": [\n");
+        for(int k = 0; k < p; ++k) {
+            int wins = 0, played = 2*(p - 1)*games;
+            for(int other = 0; other < p; ++other)
+                if(other != k)
+                    wins += firstWins[k*p + other] + games - firstWins[other*p + k];
+            Latencies player = latencies[k];
+            long[] sorted = player.sorted();
+            out.append("    {\"name\": ").append(quote(names[k]));
+            rate(out, wins, played);
+            out.append(", \"moves\": ").append(player.size);
+            out.append(", \"moves_per_second\": ").append(number(player.size/Math.max(1e-9, player.total/1e9)));
+            out.append(", \"move_p50_us\": ").append(number(percentile(sorted, 0.50)/1e3));
+            out.append(", \"move_p90_us\": ").append(number(percentile(sorted, 0.90)/1e3));
+            out.append(", \"move_p99_us\": ").append(number(percentile(sorted, 0.99)/1e3));
+            out.append(", \"move_max_us\": ").append(number(percentile(sorted, 1.00)/1e3));
+            out.append(k + 1 < p ? "},\n" : "}\n");
+        }
+        out.append("  ],\n");
+
+        out.append("  \"pairings\": [\n");
+        for(int pairing = 0, written = 0; pairing < p*p; ++pairing) {
+            if(pairing/p == pairing%p)
+                continue;
+            out.append("    {\"first\": ").append(quote(names[pairing/p]));
+            out.append(", \"second\": ").append(quote(names[pairing%p]));
+            rate(out, firstWins[pairing], games);
+            out.append(++written < p*(p - 1) ? "},\n" : "}\n");
+        }
+        out.append("  ]\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * Appends the games, the wins and the win rate with its 95% Wilson confidence interval
+     * @param out   Where to append
+     * @param wins  The wins
+     * @param games The games
+     */
+    private static void rate(StringBuilder out, int wins, int games) {
+        double p = (double) wins/games, z2 = Z*Z/games;
+        double center = (p + z2/2)/(1 + z2), half = Z*Math.sqrt(p*(1 - p)/games + z2/(4*games))/(1 + z2);
+        out.append(", \"games\": ").append(games);
+        out.append(", \"wins\": ").append(wins);
+        out.append(", \"win_rate\": ").append(number(p));
+        out.append(", \"win_rate_low\": ").append(number(Math.max(0, center - half)));
+        out.append(", \"win_rate_high\": ").append(number(Math.min(1, center + half)));
+    }
+
+    /**
+     * Reads a percentile
+     * @param sorted    The sorted values
+     * @param p         The percentile, in (0, 1]
+     * @return the smallest value with at least that share of the values at or below it, 0 if there are none
+     */
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(sorted.length*p) - 1)];
+    }
+
+    /**
+     * Formats a number for the report
+     * @param value The number
+     * @return the number with up to 4 decimals
+     */
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.4f", value).replaceAll("\\.?0+$", "");
+    }
+
+    /**
+     * Quotes a string for the report
+     * @param text The string
+     * @return the JSON string
+     */
+    private static String quote(String text) {
+        StringBuilder out = new StringBuilder("\"");
+        for(char c : text.toCharArray())
+            if(c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if(c < 0x20)
+                out.append(String.format("\\u%04x", (int) c));
+            else
+                out.append(c);
+        return out.append('"').toString();
+    }
+
+    /**
+     * Creates a player by name
+     * @param name The name of a {@link Duidoku.Level}, in any case, or the class name of a {@link Duidoku.Player}
+     * @return the player
+     * @throws ReflectiveOperationException if the class cannot be created
+     * @throws IllegalArgumentException if the class is not a player
+     */
+    private static Duidoku.Player playerOf(String name) throws ReflectiveOperationException {
+        for(Duidoku.Level level : Duidoku.Level.values())
+            if(level.name().equalsIgnoreCase(name))
+                return level;
+        Object player = Class.forName(name).getConstructor().newInstance();
+        if(!(player instanceof Duidoku.Player))
+            throw new IllegalArgumentException(name + " is not a duidoku player");
+        return (Duidoku.Player) player;
+    }
+
+    /** The results of a block of games of a pairing */
+    private static final class Block {
+        //The pairing, first*players + second
+        final int pairing;
+        //The wins of the first player
+        int firstWins = 0;
+        //The times of the moves of each player
+        final Latencies first = new Latencies(), second = new Latencies();
+
+        /**
+         * Constructs an empty block
+         * @param pairing The pairing
+         */
+        Block(int pairing) {
+            this.pairing = pairing;
+        }
+    }
+
+    /** The times of the moves of a player, in nanoseconds */
+    private static final class Latencies {
+        //The times, and their number and sum
+        long[] values = new long[64];
+        int size = 0;
+        long total = 0;
+
+        /**
+         * Adds a time
+         * @param nanos The time
+         */
+        void add(long nanos) {
+            if(size == values.length)
+                values = Arrays.copyOf(values, size*2);
+            values[size++] = nanos;
+            total += nanos;
+        }
+
+        /**
+         * Adds the times of an other
+         * @param other The other
+         */
+        void add(Latencies other) {
+            for(int k = 0; k < other.size; ++k)
+                add(other.values[k]);
+        }
+
+        /**
+         * Sorts the times
+         * @return a sorted copy of the times
+         */
+        long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
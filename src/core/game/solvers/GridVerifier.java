@@ -0,0 +1,338 @@
+package core.game.solvers;
+
+import core.game.sudoku.KillerSudoku;
+import core.game.sudoku.Sudoku;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Verifies completed grids in bulk: every row, column and box must hold each value once and, for a killer sudoku,
+ * every cage must sum to its target with distinct values.
+ * <br>
+ * The grids are checked in {@link Batch batches} stored as a struct of arrays: an int array per cell with a lane
+ * per grid, holding the bit of the value. Every check is then a plain loop over the lanes with no branches, which
+ * the JIT turns into SIMD instructions. {@link #verify(int[])} checks a single row major grid with ordinary loops.
+ * <br>
+ * A verifier is immutable and may be shared by threads; a batch belongs to one thread at a time.
+ */
+public final class GridVerifier {
+
+    /** A cell is empty or out of range */
+    public static final int VALUES  = 1;
+    /** A row does not hold each value once */
+    public static final int ROWS    = 2;
+    /** A column does not hold each value once */
+    public static final int COLUMNS = 4;
+    /** A box does not hold each value once */
+    public static final int BOXES   = 8;
+    /** A cage misses its sum or repeats a value */
+    public static final int CAGES   = 16;
+    /** The largest board dimension, one bit per value in an int */
+    public static final int MAX_DIMENSION = 31;
+
+    //The board dimension
+    private final int d;
+    //The cells of each unit: the rows, then the columns, then the boxes
+    private final int[][] units;
+    //The cells and the sum of each cage, none for a standard sudoku
+    private final int[][] cages;
+    private final int[] sums;
+    //The values of a complete unit, bit v for value v
+    private final int full;
+
+    /**
+     * Constructs a verifier for standard grids
+     * @param d The board dimension
+     * @param b The box dimension
+     * @throws IllegalArgumentException if the boxes do not hold d cells or d exceeds {@link #MAX_DIMENSION}
+     */
+    public GridVerifier(int d, int b) {
+        this(d, b, Collections.emptySet());
+    }
+
+    /**
+     * Constructs a verifier for killer grids
+     * @param d     The board dimension
+     * @param b     The box dimension
+     * @param cages The cages
+     * @throws NullPointerException if the cages is null
+     * @throws IllegalArgumentException if the boxes do not hold d cells, d exceeds {@link #MAX_DIMENSION} or a cage
+     *                                  is empty or has a cell outside the board
+     */
+    public GridVerifier(int d, int b, Collection<KillerSudoku.Area> cages) {
+        if(cages == null)
+            throw new NullPointerException("Cages is null");
+        if(d <= 0 || d > MAX_DIMENSION)
+            throw new IllegalArgumentException("Board dimension is not in [1, " + MAX_DIMENSION + "]");
+        if(b <= 0 || b*b != d)
+            throw new IllegalArgumentException("Boxes do not hold " + d + " cells");
+
+        this.d = d;
+        full = (1 << (d + 1)) - 2;
+        units = new int[3*d][d];
+        for(int j = 0; j < d; ++j)
+            for(int i = 0; i < d; ++i) {
+                int idx = i + j*d, box = (j/b)*b + i/b;
+                units[j][i] = idx;
+                units[d + i][j] = idx;
+                units[2*d + box][(j % b)*b + i % b] = idx;
+            }
+
+        this.cages = new int[cages.size()][];
+        sums = new int[cages.size()];
+        int c = 0;
+        for(KillerSudoku.Area cage : cages) {
+            if(cage.getCellCount() == 0)
+                throw new IllegalArgumentException("Cage is empty");
+            int[] cells = new int[cage.getCellCount()];
+            for(int k = 0; k < cells.length; ++k)
+                if((cells[k] = cage.getCell(k)) < 0 || cells[k] >= d*d)
+                    throw new IllegalArgumentException("Cage cell is outside the board");
+            this.cages[c] = cells;
+            sums[c++] = cage.getSum();
+        }
+    }
+
+    /**
+     * Constructs a verifier for the grids of a game: its size and, for a killer sudoku, its cages
+     * @param game The game
+     * @return the verifier
+     * @throws IllegalArgumentException if the boxes do not hold d cells or d exceeds {@link #MAX_DIMENSION}
+     */
+    public static GridVerifier of(Sudoku game) {
+        if(game instanceof KillerSudoku)
+            return new GridVerifier(game.getBoardDimension(), game.getBoxDimension(),
+                                    ((KillerSudoku) game).getAreas());
+        return new GridVerifier(game.getBoardDimension(), game.getBoxDimension());
+    }
+
+    /**
+     * Creates an empty batch of grids of this size
+     * @param capacity The number of grids it holds
+     * @return the batch
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public Batch newBatch(int capacity) {
+        return new Batch(d, capacity, cages.length > 0);
+    }
+
+    /**
+     * Verifies the grids of a batch
+     * @param batch The batch, left untouched
+     * @return the violations of each grid in the order they were added, a combination of {@link #VALUES},
+     *         {@link #ROWS}, {@link #COLUMNS}, {@link #BOXES} and {@link #CAGES}, 0 for a valid grid
+     * @throws IllegalArgumentException if the batch is for grids of an other size
+     */
+    public int[] verify(Batch batch) {
+        if(batch.d != d || (cages.length > 0 && batch.values == null))
+            throw new IllegalArgumentException("Batch is not from this verifier");
+        int n = batch.size;
+        int[][] bits = batch.bits, values = batch.values;
+        int[] seen = batch.seen, sum = batch.sum, bad = batch.bad;
+        int[] violations = new int[n];
+
+        //A unit is complete when its d cells hold every value: each one sets its bit and the bits are exactly full.
+        //Every cell is in one row, so the rows also catch the empty cells, whose bit 0 is never in full
+        for(int kind = 0; kind < 3; ++kind) {
+            Arrays.fill(bad, 0, n, 0);
+            for(int u = kind*d; u < (kind + 1)*d; ++u) {
+                int[] cell = bits[units[u][0]];
+                for(int g = 0; g < n; ++g)
+                    seen[g] = cell[g];
+                for(int k = 1; k < d; ++k) {
+                    cell = bits[units[u][k]];
+                    for(int g = 0; g < n; ++g)
+                        seen[g] |= cell[g];
+                }
+                for(int g = 0; g < n; ++g)
+                    bad[g] |= seen[g] ^ full;
+            }
+            int flag = kind == 0 ? ROWS : kind == 1 ? COLUMNS : BOXES;
+            for(int g = 0; g < n; ++g)
+                violations[g] |= (bad[g] & 1)*VALUES | (bad[g] != 0 ? flag : 0);
+        }
+
+        //A cage repeats a value when a cell sets a bit that is already set
+        if(cages.length > 0) {
+            Arrays.fill(bad, 0, n, 0);
+            for(int c = 0; c < cages.length; ++c) {
+                int[] cell = bits[cages[c][0]], value = values[cages[c][0]];
+                for(int g = 0; g < n; ++g) {
+                    seen[g] = cell[g];
+                    sum[g] = value[g];
+                }
+                for(int k = 1; k < cages[c].length; ++k) {
+                    cell = bits[cages[c][k]];
+                    value = values[cages[c][k]];
+                    for(int g = 0; g < n; ++g) {
+                        bad[g] |= seen[g] & cell[g];
+                        seen[g] |= cell[g];
+                        sum[g] += value[g];
+                    }
+                }
+                for(int g = 0; g < n; ++g)
+                    bad[g] |= sum[g] ^ sums[c];
+            }
+            for(int g = 0; g < n; ++g)
+                violations[g] |= bad[g] != 0 ? CAGES : 0;
+        }
+        return violations;
+    }
+
+    /**
+     * Verifies a single grid
+     * @param grid The values in row major order
+     * @return the violations, as by {@link #verify(Batch)}
+     * @throws IllegalArgumentException if the grid is of an other size
+     */
+    public int verify(int[] grid) {
+        if(grid.length != d*d)
+            throw new IllegalArgumentException("Grid is not " + d + "x" + d);
+        int violations = 0;
+        for(int v : grid)
+            if(v <= 0 || v > d)
+                violations |= VALUES;
+        for(int u = 0; u < units.length; ++u) {
+            int seen = 0;
+            for(int idx : units[u])
+                seen |= 1 << valueOf(grid[idx]);
+            if(seen != full)
+                violations |= u < d ? ROWS : u < 2*d ? COLUMNS : BOXES;
+        }
+        for(int c = 0; c < cages.length; ++c) {
+            int seen = 0, sum = 0;
+            boolean repeated = false;
+            for(int idx : cages[c]) {
+                int v = valueOf(grid[idx]);
+                repeated |= (seen & 1 << v) != 0;
+                seen |= 1 << v;
+                sum += v;
+            }
+            if(repeated || sum != sums[c])
+                violations |= CAGES;
+        }
+        return violations;
+    }
+
+    /**
+     * Maps a value out of range to 0, which is never a valid value
+     * @param v The value
+     * @return the value if in [1, d], 0 otherwise
+     */
+    private int valueOf(int v) {
+        return v < 0 || v > d ? 0 : v;
+    }
+
+    /**
+     * A batch of grids of the same size, stored as a struct of arrays, with the scratch space to verify them
+     */
+    public static final class Batch {
+
+        //The board dimension
+        private final int d;
+        //The number of grids it holds and holds now
+        private final int capacity;
+        private int size = 0;
+        //The bit of the value of cell i of grid g at [i][g], bit 0 for the empty and out of range values
+        private final int[][] bits;
+        //The value of cell i of grid g at [i][g], for the cage sums (null without cages)
+        private final int[][] values;
+        //The values seen, the sums and the violations per grid while verifying
+        private final int[] seen, sum, bad;
+
+        /**
+         * Constructs an empty batch
+         * @param d         The board dimension
+         * @param capacity  The number of grids it holds
+         * @param cages     Whether the grids have cages
+         * @throws IllegalArgumentException if the capacity is not positive
+         */
+        private Batch(int d, int capacity, boolean cages) {
+            if(capacity <= 0)
+                throw new IllegalArgumentException("Capacity is not positive");
+            this.d = d;
+            this.capacity = capacity;
+            bits   = new int[d*d][capacity];
+            values = cages ? new int[d*d][capacity] : null;
+            seen = new int[capacity];
+            sum  = new int[capacity];
+            bad  = new int[capacity];
+        }
+
+        /**
+         * Adds a grid
+         * @param grid The values in row major order
+         * @return the position of the grid in the batch
+         * @throws IllegalArgumentException if the grid is of an other size
+         * @throws IllegalStateException if the batch is full
+         */
+        public int add(int[] grid) {
+            if(grid.length != d*d)
+                throw new IllegalArgumentException("Grid is not " + d + "x" + d);
+            if(isFull())
+                throw new IllegalStateException("Batch is full");
+            for(int i = 0; i < grid.length; ++i)
+                set(i, grid[i] < 0 || grid[i] > d ? 0 : grid[i]);
+            return size++;
+        }
+
+        /**
+         * Adds the grid of a game
+         * @param game The game
+         * @return the position of the grid in the batch
+         * @throws IllegalArgumentException if the game is of an other size
+         * @throws IllegalStateException if the batch is full
+         */
+        public int add(Sudoku game) {
+            if(game.getBoardDimension() != d)
+                throw new IllegalArgumentException("Game is not " + d + "x" + d);
+            if(isFull())
+                throw new IllegalStateException("Batch is full");
+            for(int i = 0; i < d*d; ++i)
+                set(i, game.get(i));
+            return size++;
+        }
+
+        /**
+         * Sets a cell of the next grid
+         * @param i The raw index of the cell
+         * @param v The value, in [0, d]
+         */
+        private void set(int i, int v) {
+            bits[i][size] = 1 << v;
+            if(values != null)
+                values[i][size] = v;
+        }
+
+        /** Empties the batch, to reuse it */
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the number of grids
+         * @return the number of grids added since the batch was created or cleared
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the capacity
+         * @return the number of grids it holds
+         */
+        public int capacity() {
+            return capacity;
+        }
+
+        /**
+         * Checks if the batch is full
+         * @return true if no more grids fit, false otherwise
+         */
+        public boolean isFull() {
+            return size == capacity;
+        }
+    }
+}
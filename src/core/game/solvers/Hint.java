@@ -0,0 +1,95 @@
+package core.game.solvers;
+
+import java.util.Arrays;
+
+/** A single logical deduction: the value of a cell, the technique that finds it and the cells that justify it */
+public final class Hint {
+
+    /** The techniques, from the easiest to the hardest */
+    public enum Technique {
+        /** The only empty cell of a row, column or box */
+        FULL_HOUSE,
+        /** The only place for a value in a row, column or box */
+        HIDDEN_SINGLE,
+        /** The only value a cell can take */
+        NAKED_SINGLE,
+        /** The only value that completes the sum of a cage with distinct values */
+        CAGE_COMBINATION,
+        /** A single after removing a value confined to the intersection of two units from the rest of them */
+        LOCKED_CANDIDATES,
+        /** A single after removing the two values of two cells of a unit from the rest of it */
+        NAKED_PAIR;
+
+        /**
+         * Returns the key of the name of the technique in the message bundle
+         * @return the key
+         */
+        public String getKey() {
+            return "technique_" + name().toLowerCase();
+        }
+    }
+
+    //The cell and its value
+    private final int cell, value;
+    //The technique
+    private final Technique technique;
+    //The cells that justify the deduction, sorted
+    private final int[] reasons;
+
+    /**
+     * Constructs a hint
+     * @param cell      The raw index of the cell
+     * @param value     The value of the cell
+     * @param technique The technique
+     * @param reasons   The raw indices of the cells that justify the deduction (by reference, sorted in place)
+     * @throws NullPointerException if the technique or the reasons are null
+     */
+    public Hint(int cell, int value, Technique technique, int[] reasons) {
+        if(technique == null)
+            throw new NullPointerException("Technique is null");
+        if(reasons == null)
+            throw new NullPointerException("Reasons is null");
+        Arrays.sort(reasons);
+        this.cell = cell;
+        this.value = value;
+        this.technique = technique;
+        this.reasons = reasons;
+    }
+
+    /**
+     * Getter for the cell
+     * @return the raw index of the cell
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * Getter for the value
+     * @return the value of the cell
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for the technique
+     * @return the technique
+     */
+    public Technique getTechnique() {
+        return technique;
+    }
+
+    /**
+     * Getter for the reasons
+     * @return a copy of the raw indices of the cells that justify the deduction, sorted
+     */
+    public int[] getReasons() {
+        return reasons.clone();
+    }
+
+    @Override
+    public String toString() {
+        return technique + ": " + value + " at " + cell + " because of " + Arrays.toString(reasons);
+    }
+}
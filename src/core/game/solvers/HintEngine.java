@@ -0,0 +1,400 @@
+package core.game.solvers;
+
+import core.game.sudoku.KillerSudoku;
+import core.game.sudoku.Sudoku;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds the easiest next logical deduction of a game, without solving it.
+ * <br>
+ * Starts from the candidates the game keeps (for a killer sudoku, from the ones of the rows, columns and boxes alone,
+ * since the cages are a technique of their own) and looks for the techniques of {@link Hint.Technique} in order: singles
+ * on the candidates of the rows, columns and boxes, then on the candidates narrowed by the cages, then singles that
+ * appear after removing candidates with locked candidates and naked pairs. A hint costs a few passes over the cells,
+ * well under a millisecond on a 9x9 board. Supports boards up to {@link Sudoku#MAX_CANDIDATE_DIMENSION}.
+ */
+public final class HintEngine {
+
+    //The game
+    private final Sudoku game;
+    //The board and box dimensions and the number of cells
+    private final int d, b, n;
+    //The cells of each unit: rows, then columns, then boxes
+    private final int[][] units;
+    //The units every value appears in exactly once: the boxes only if they have d cells
+    private final int unitCount;
+    //The cell holding each value in each unit, at unit*(d + 1) + v, -1 for none, to explain the hints
+    private final int[] holders;
+    //The working candidates of each cell, bit v - 1 for value v
+    private final long[] candidates;
+    //The cells that removed candidates of each cell beyond its units, null for none
+    private final BitSet[] removedBy;
+
+    /**
+     * Finds the easiest next deduction of a game
+     * @param game The game, left untouched
+     * @return the hint, or null if the board is full, has conflicts or needs a harder technique
+     * @throws UnsupportedOperationException if the board dimension exceeds {@link Sudoku#MAX_CANDIDATE_DIMENSION}
+     */
+    public static Hint next(Sudoku game) {
+        if(game == null)
+            throw new NullPointerException("Game is null");
+        if(game.getBoardDimension() > Sudoku.MAX_CANDIDATE_DIMENSION)
+            throw new UnsupportedOperationException("Hints need a board dimension of at most " + Sudoku.MAX_CANDIDATE_DIMENSION);
+        if(game.hasConflicts())
+            return null;
+        return new HintEngine(game).find();
+    }
+
+    /**
+     * Rates a game by the hardest technique needed to fill it, one hint at a time
+     * @param game The game, left untouched
+     * @return the hardest technique ({@link Hint.Technique#FULL_HOUSE} if the board is already complete), or null if
+     * the hints get stuck before the board is complete
+     * @throws UnsupportedOperationException if the board dimension exceeds {@link Sudoku#MAX_CANDIDATE_DIMENSION}
+     */
+    public static Hint.Technique rate(Sudoku game) {
+        Sudoku copy = game.copy();
+        Hint.Technique hardest = Hint.Technique.FULL_HOUSE;
+        while(!copy.isComplete()) {
+            Hint hint = next(copy);
+            if(hint == null || !copy.place(hint.getCell(), hint.getValue()))
+                return null;
+            if(hint.getTechnique().compareTo(hardest) > 0)
+                hardest = hint.getTechnique();
+        }
+        return hardest;
+    }
+
+    /**
+     * Lays out the units of a game and reads its candidates
+     * @param game The game
+     */
+    private HintEngine(Sudoku game) {
+        this.game = game;
+        d = game.getBoardDimension();
+        b = game.getBoxDimension();
+        n = d*d;
+        int perRow = d/b;
+        units = new int[2*d + perRow*perRow][];
+        for(int k = 0; k < d; ++k) {
+            units[k] = new int[d];
+            units[d + k] = new int[d];
+            for(int l = 0; l < d; ++l) {
+                units[k][l] = l + k*d;      //Row k
+                units[d + k][l] = k + l*d;  //Column k
+            }
+        }
+        for(int box = 0; box < perRow*perRow; ++box) {
+            int bi = (box%perRow)*b, bj = (box/perRow)*b;
+            units[2*d + box] = new int[b*b];
+            for(int l = 0; l < b*b; ++l)
+                units[2*d + box][l] = bi + l%b + (bj + l/b)*d;
+        }
+        unitCount = b*b == d ? units.length : 2*d;
+
+        holders = new int[units.length*(d + 1)];
+        Arrays.fill(holders, -1);
+        for(int u = 0; u < units.length; ++u)
+            for(int idx : units[u])
+                if(!game.isCellEmpty(game.get(idx)))
+                    holders[u*(d + 1) + game.get(idx)] = idx;
+
+        candidates = new long[n];
+        removedBy = new BitSet[n];
+        boolean kept = !(game instanceof KillerSudoku);    //A killer game narrows the candidates it keeps by the cages
+        for(int idx = 0; idx < n; ++idx)
+            candidates[idx] = kept ? game.getCandidates(idx) : unitCandidates(idx);
+    }
+
+    /**
+     * Computes the candidates of a cell from its row, column and box alone
+     * @param idx The cell
+     * @return the candidates, none if the cell is filled
+     */
+    private long unitCandidates(int idx) {
+        if(!game.isCellEmpty(game.get(idx)))
+            return 0;
+        long candidates = 0;
+        for(int v = 1; v <= d; ++v)
+            if(holder(idx, v) == -1)
+                candidates |= 1L << (v - 1);
+        return candidates;
+    }
+
+    /**
+     * Finds a cell holding a value in the row, column or box of a cell
+     * @param idx   The cell
+     * @param v     The value
+     * @return the cell holding the value, -1 for none
+     */
+    private int holder(int idx, int v) {
+        int h = holders[(idx/d)*(d + 1) + v];
+        if(h == -1)
+            h = holders[(d + idx%d)*(d + 1) + v];
+        if(h == -1)
+            h = holders[box(idx)*(d + 1) + v];
+        return h;
+    }
+
+    /**
+     * Returns the box unit of a cell
+     * @param idx The cell
+     * @return the unit
+     */
+    private int box(int idx) {
+        return 2*d + (idx/d/b)*(d/b) + (idx%d)/b;
+    }
+
+    /**
+     * Tries the techniques from the easiest to the hardest
+     * @return the hint, or null if none applies
+     */
+    private Hint find() {
+        Hint hint = fullHouse();
+        if(hint == null)
+            hint = singles(Hint.Technique.HIDDEN_SINGLE, Hint.Technique.NAKED_SINGLE);
+        if(hint == null && game instanceof KillerSudoku && narrowByCages((KillerSudoku) game))
+            hint = singles(Hint.Technique.CAGE_COMBINATION, Hint.Technique.CAGE_COMBINATION);
+
+        Hint.Technique hardest = null;
+        while(hint == null) {
+            if(lockedCandidates()) {
+                if(hardest == null)
+                    hardest = Hint.Technique.LOCKED_CANDIDATES;
+            } else if(nakedPairs()) {
+                hardest = Hint.Technique.NAKED_PAIR;
+            } else {
+                return null;    //Stuck
+            }
+            hint = singles(hardest, hardest);
+        }
+        return hint;
+    }
+
+    /**
+     * Finds a unit with a single empty cell
+     * @return the hint, justified by the other cells of the unit, or null
+     */
+    private Hint fullHouse() {
+        for(int u = 0; u < unitCount; ++u) {
+            int empty = -1, count = 0;
+            for(int idx : units[u])
+                if(game.isCellEmpty(game.get(idx))) {
+                    empty = idx;
+                    ++count;
+                }
+            if(count != 1 || Long.bitCount(candidates[empty]) != 1)
+                continue;
+            int[] reasons = new int[units[u].length - 1];
+            int k = 0;
+            for(int idx : units[u])
+                if(idx != empty)
+                    reasons[k++] = idx;
+            return new Hint(empty, value(candidates[empty]), Hint.Technique.FULL_HOUSE, reasons);
+        }
+        return null;
+    }
+
+    /**
+     * Finds a hidden single, boxes first, then a naked single, on the working candidates
+     * @param hidden    The technique to report for a hidden single
+     * @param naked     The technique to report for a naked single
+     * @return the hint, or null
+     */
+    private Hint singles(Hint.Technique hidden, Hint.Technique naked) {
+        for(int k = 0; k < unitCount; ++k) {
+            int u = (k + 2*d) % unitCount;  //The boxes, if any, then the rows and the columns
+            for(int v = 1; v <= d; ++v) {
+                if(holders[u*(d + 1) + v] != -1)
+                    continue;
+                int place = -1, count = 0;
+                for(int idx : units[u])
+                    if((candidates[idx] & 1L << (v - 1)) != 0) {
+                        place = idx;
+                        ++count;
+                    }
+                if(count == 1)
+                    return new Hint(place, v, hidden, hiddenReasons(u, place, v));
+            }
+        }
+        for(int idx = 0; idx < n; ++idx)
+            if(Long.bitCount(candidates[idx]) == 1)
+                return new Hint(idx, value(candidates[idx]), naked, nakedReasons(idx, value(candidates[idx])));
+        return null;
+    }
+
+    /**
+     * Finds why a value has a single place in a unit: what keeps it out of every other empty cell of the unit
+     * @param u     The unit
+     * @param place The place of the value
+     * @param v     The value
+     * @return the cells
+     */
+    private int[] hiddenReasons(int u, int place, int v) {
+        BitSet reasons = new BitSet(n);
+        for(int idx : units[u]) {
+            if(idx == place || !game.isCellEmpty(game.get(idx)))
+                continue;
+            int h = holder(idx, v);
+            if(h != -1)
+                reasons.set(h);
+            else if(removedBy[idx] != null)
+                reasons.or(removedBy[idx]);
+        }
+        reasons.clear(place);
+        return reasons.stream().toArray();
+    }
+
+    /**
+     * Finds why a cell has a single candidate: what rules out every other value
+     * @param idx   The cell
+     * @param v     The candidate
+     * @return the cells
+     */
+    private int[] nakedReasons(int idx, int v) {
+        BitSet reasons = new BitSet(n);
+        for(int w = 1; w <= d; ++w) {
+            int h = w == v ? -1 : holder(idx, w);
+            if(h != -1)
+                reasons.set(h);
+        }
+        if(removedBy[idx] != null)
+            reasons.or(removedBy[idx]);
+        reasons.clear(idx);
+        return reasons.stream().toArray();
+    }
+
+    /**
+     * Narrows the candidates to the values that complete the sums of the cages
+     * @param game The game
+     * @return true if some candidate was removed, false otherwise
+     */
+    private boolean narrowByCages(KillerSudoku game) {
+        int[][] cages = new int[n][];
+        for(KillerSudoku.Area area : game.getAreas()) {
+            int[] cells = new int[area.getCellCount()];
+            for(int k = 0; k < cells.length; ++k)
+                cells[k] = area.getCell(k);
+            for(int idx : cells)
+                cages[idx] = cells;
+        }
+
+        boolean changed = false;
+        for(int idx = 0; idx < n; ++idx) {
+            long narrowed = candidates[idx] & game.getCandidates(idx);
+            if(narrowed != candidates[idx] && cages[idx] != null) {
+                candidates[idx] = narrowed;
+                for(int cell : cages[idx])
+                    removedBy(idx).set(cell);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the values confined to the intersection of a box with a row or column from the rest of the row or
+     * column (pointing) or of the box (claiming)
+     * @return true if some candidate was removed, false otherwise
+     */
+    private boolean lockedCandidates() {
+        if(unitCount == 2*d)
+            return false;
+        boolean changed = false;
+        for(int u = 0; u < unitCount; ++u) {
+            for(int v = 1; v <= d; ++v) {
+                long bit = 1L << (v - 1);
+                int row = -1, column = -1, box = -1, count = 0;
+                BitSet pattern = new BitSet(n);
+                for(int idx : units[u]) {
+                    if((candidates[idx] & bit) == 0)
+                        continue;
+                    row    = count == 0 || row == idx/d ? idx/d : -2;
+                    column = count == 0 || column == idx%d ? idx%d : -2;
+                    box    = count == 0 || box == box(idx) ? box(idx) : -2;
+                    pattern.set(idx);
+                    ++count;
+                }
+                if(count < 2)
+                    continue;
+                if(u >= 2*d) {  //Pointing
+                    if(row >= 0)
+                        changed |= remove(units[row], v, pattern);
+                    if(column >= 0)
+                        changed |= remove(units[d + column], v, pattern);
+                } else if(box >= 0) {   //Claiming
+                    changed |= remove(units[box], v, pattern);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the values of two cells of a unit with the same two candidates from the rest of the unit
+     * @return true if some candidate was removed, false otherwise
+     */
+    private boolean nakedPairs() {
+        boolean changed = false;
+        for(int u = 0; u < unitCount; ++u) {
+            int[] cells = units[u];
+            for(int k = 0; k < cells.length; ++k) {
+                long pair = candidates[cells[k]];
+                if(Long.bitCount(pair) != 2)
+                    continue;
+                for(int l = k + 1; l < cells.length; ++l) {
+                    if(candidates[cells[l]] != pair)
+                        continue;
+                    BitSet pattern = new BitSet(n);
+                    pattern.set(cells[k]);
+                    pattern.set(cells[l]);
+                    for(long rest = pair; rest != 0; rest &= rest - 1)
+                        changed |= remove(cells, Long.numberOfTrailingZeros(rest) + 1, pattern);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes a candidate from the cells of a unit outside a pattern
+     * @param cells     The cells of the unit
+     * @param v         The value
+     * @param pattern   The cells that justify the removal
+     * @return true if some candidate was removed, false otherwise
+     */
+    private boolean remove(int[] cells, int v, BitSet pattern) {
+        boolean changed = false;
+        for(int idx : cells) {
+            if(pattern.get(idx) || (candidates[idx] & 1L << (v - 1)) == 0)
+                continue;
+            candidates[idx] &= ~(1L << (v - 1));
+            removedBy(idx).or(pattern);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the cells that removed candidates of a cell, creating the set on first use
+     * @param idx The cell
+     * @return the set
+     */
+    private BitSet removedBy(int idx) {
+        if(removedBy[idx] == null)
+            removedBy[idx] = new BitSet(n);
+        return removedBy[idx];
+    }
+
+    /**
+     * Returns the value of a single candidate
+     * @param candidate The candidate, one bit
+     * @return the value
+     */
+    private static int value(long candidate) {
+        return Long.numberOfTrailingZeros(candidate) + 1;
+    }
+}
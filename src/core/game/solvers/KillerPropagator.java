@@ -0,0 +1,469 @@
+package core.game.solvers;
+
+import core.game.sudoku.KillerSudoku;
+
+import java.util.*;
+
+/**
+ * Narrows the candidates of a killer sudoku with the rules of its cages, so that a search branches only where the
+ * rules run out.
+ * <br>
+ * Repeats until nothing changes:
+ * <ul>
+ *     <li>naked and hidden singles on the rows, columns and boxes</li>
+ *     <li>the sums of the cages: a value stays only if some set of distinct candidates of the cage with it reaches the
+ *     sum, which covers the smallest and largest sums the other cells can still make</li>
+ *     <li>the 45 rule: the rows, columns and boxes, and runs of adjacent rows and columns, sum to a known total, so
+ *     the cells they share with cages sticking out of them (innies) and the cells of those cages outside them
+ *     (outies) sum to a known total as well, and are narrowed like a cage</li>
+ *     <li>cage and unit intersection: a value a cage must hold, whose cells in the cage share a unit, is removed from
+ *     the rest of the unit; a value whose cells in a unit all lie in one cage is removed from the rest of the
+ *     cage</li>
+ * </ul>
+ * The cages are searched by the set of values they use, for boards up to {@link #MAX_SET_DIMENSION}; larger boards
+ * only use the sums. The 45 rule needs every cell in exactly one cage.
+ */
+final class KillerPropagator {
+
+    //The largest board whose groups are searched by value sets
+    static final int MAX_SET_DIMENSION = 16;
+
+    //The game
+    private final KillerSudoku game;
+    //The board dimension and the number of cells
+    private final int d, n;
+    //The cells of each unit: rows, then columns, then boxes; the units every value appears in exactly once
+    private final int[][] units;
+    private final int unitCount;
+    //The units of each cell: its row, column and box
+    private final int[][] unitsOf;
+    //The sum groups: the cages, then the innies and outies of the 45 rule
+    private final int[][] groups;
+    private final int[] groupSums;
+    //If the values of each group are distinct
+    private final boolean[] distinct;
+    //The number of groups that are cages
+    private final int cages;
+    //The cage of each cell, -1 for none or more than one
+    private final int[] cageOf;
+
+    //The values each cage must still hold, found by the last search of the cage
+    private final long[] required;
+    //The values held by each unit, while narrowing
+    private final long[] placed;
+    //The search of a group: its empty cells, their candidates, the values found for each and the bounds of the rest
+    private int[] cells;
+    private long[] options, support;
+    private int[] minRest, maxRest;
+    private int remaining;
+    private long reached;
+    //The memo of the search: the state is known if its stamp is the current one
+    private int[] stamps = new int[0];
+    private boolean[] feasible = new boolean[0];
+    private int stamp = 0;
+
+    /**
+     * Lays out the units and the sum groups of a game
+     * @param game The game, whose cages are read once
+     * @throws UnsupportedOperationException if the board dimension exceeds the candidates of the game
+     */
+    KillerPropagator(KillerSudoku game) {
+        this.game = game;
+        d = game.getBoardDimension();
+        n = d*d;
+        int b = game.getBoxDimension(), perRow = d/b;
+        units = new int[2*d + perRow*perRow][];
+        for(int k = 0; k < d; ++k) {
+            units[k] = new int[d];
+            units[d + k] = new int[d];
+            for(int l = 0; l < d; ++l) {
+                units[k][l] = l + k*d;      //Row k
+                units[d + k][l] = k + l*d;  //Column k
+            }
+        }
+        for(int box = 0; box < perRow*perRow; ++box) {
+            int bi = (box%perRow)*b, bj = (box/perRow)*b;
+            units[2*d + box] = new int[b*b];
+            for(int l = 0; l < b*b; ++l)
+                units[2*d + box][l] = bi + l%b + (bj + l/b)*d;
+        }
+        unitCount = b*b == d ? units.length : 2*d;
+        unitsOf = new int[n][];
+        for(int idx = 0; idx < n; ++idx)
+            unitsOf[idx] = new int[]{idx/d, d + idx%d, 2*d + (idx%d)/b + (idx/d)/b*perRow};
+
+        //The cages
+        List<int[]> groupList = new ArrayList<>();
+        List<Integer> sumList = new ArrayList<>();
+        int[] areaCount = new int[n];
+        cageOf = new int[n];
+        Arrays.fill(cageOf, -1);
+        for(KillerSudoku.Area area : game.getAreas()) {
+            int[] cage = new int[area.getCellCount()];
+            for(int k = 0; k < cage.length; ++k) {
+                cage[k] = area.getCell(k);
+                cageOf[cage[k]] = groupList.size();
+                ++areaCount[cage[k]];
+            }
+            groupList.add(cage);
+            sumList.add(area.getSum());
+        }
+        cages = groupList.size();
+        boolean partition = true;
+        for(int idx = 0; idx < n; ++idx) {
+            if(areaCount[idx] != 1)
+                cageOf[idx] = -1;
+            partition &= areaCount[idx] == 1;
+        }
+
+        //The innies and outies of the units and of the runs of adjacent rows and columns
+        if(partition) {
+            Set<String> seen = new HashSet<>();
+            for(int u = 0; u < unitCount; ++u)
+                addInniesAndOuties(units[u], groupList, sumList, seen);
+            for(int length = 2; length < d; ++length)
+                for(int first = 0; first + length <= d; ++first) {
+                    int[] rows = new int[length*d], columns = new int[length*d];
+                    for(int k = 0; k < length; ++k) {
+                        System.arraycopy(units[first + k], 0, rows, k*d, d);
+                        System.arraycopy(units[d + first + k], 0, columns, k*d, d);
+                    }
+                    addInniesAndOuties(rows, groupList, sumList, seen);
+                    addInniesAndOuties(columns, groupList, sumList, seen);
+                }
+        }
+
+        groups = groupList.toArray(new int[0][]);
+        groupSums = new int[groups.length];
+        distinct = new boolean[groups.length];
+        for(int g = 0; g < groups.length; ++g) {
+            groupSums[g] = sumList.get(g);
+            distinct[g] = g < cages || shareUnit(groups[g]);
+        }
+        required = new long[cages];
+        placed = new long[units.length];
+    }
+
+    /**
+     * Adds the innies and outies of a region made of whole units, if they are small enough to narrow anything
+     * @param region    The cells of the region
+     * @param groupList The groups so far
+     * @param sumList   Their sums
+     * @param seen      The groups added so far, to skip repeats
+     */
+    private void addInniesAndOuties(int[] region, List<int[]> groupList, List<Integer> sumList, Set<String> seen) {
+        boolean[] in = new boolean[n];
+        for(int idx : region)
+            in[idx] = true;
+        int total = region.length/d*(d*(d + 1)/2), inside = 0, partialSums = 0;
+        List<Integer> innies = new ArrayList<>(), outies = new ArrayList<>();
+        for(int a = 0; a < cages; ++a) {
+            int[] cage = groupList.get(a);
+            int count = 0;
+            for(int idx : cage)
+                if(in[idx])
+                    ++count;
+            if(count == cage.length)
+                inside += sumList.get(a);
+            else if(count > 0) {
+                partialSums += sumList.get(a);
+                for(int idx : cage)
+                    (in[idx] ? innies : outies).add(idx);
+            }
+        }
+        addGroup(innies, total - inside, groupList, sumList, seen);
+        addGroup(outies, partialSums - (total - inside), groupList, sumList, seen);
+    }
+
+    /**
+     * Adds a group, unless it is empty, larger than a unit or seen before
+     * @param cells     The cells of the group
+     * @param sum       Their sum
+     * @param groupList The groups so far
+     * @param sumList   Their sums
+     * @param seen      The groups added so far
+     */
+    private void addGroup(List<Integer> cells, int sum, List<int[]> groupList, List<Integer> sumList, Set<String> seen) {
+        if(cells.isEmpty() || cells.size() > d)
+            return;
+        int[] group = cells.stream().mapToInt(Integer::intValue).sorted().toArray();
+        if(seen.add(Arrays.toString(group) + "=" + sum)) {
+            groupList.add(group);
+            sumList.add(sum);
+        }
+    }
+
+    /**
+     * Checks if some row, column or box holds all the cells of a group
+     * @param group The cells
+     * @return true if they share a unit, false otherwise
+     */
+    private boolean shareUnit(int[] group) {
+        for(int t = 0; t < 3; ++t) {
+            boolean shared = unitsOf[group[0]][t] < unitCount;
+            for(int idx : group)
+                shared &= unitsOf[idx][t] == unitsOf[group[0]][t];
+            if(shared)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Narrows the candidates of the empty cells of the game
+     * @param candidates Where to write the candidates of every cell, bit v - 1 for value v, none if filled
+     * @return false if the game cannot be completed, true otherwise
+     */
+    boolean narrow(long[] candidates) {
+        for(int idx = 0; idx < n; ++idx) {
+            candidates[idx] = game.isCellEmpty(game.get(idx)) ? game.getCandidates(idx) : 0;
+            if(candidates[idx] == 0 && game.isCellEmpty(game.get(idx)))
+                return false;
+        }
+        Arrays.fill(placed, 0);
+        for(int idx = 0; idx < n; ++idx)
+            if(!game.isCellEmpty(game.get(idx)))
+                for(int u : unitsOf[idx])
+                    placed[u] |= 1L << (game.get(idx) - 1);
+
+        for(boolean changed = true; changed; ) {
+            int singles = singles(candidates);
+            if(singles < 0)
+                return false;
+            changed = singles > 0;
+            for(int g = 0; g < groups.length; ++g) {
+                int sums = sums(g, candidates);
+                if(sums < 0)
+                    return false;
+                changed |= sums > 0;
+            }
+            int intersections = intersections(candidates);
+            if(intersections < 0)
+                return false;
+            changed |= intersections > 0;
+        }
+        return true;
+    }
+
+    /**
+     * Removes the values of the naked singles from their units and keeps only the value of the hidden singles
+     * @param candidates The candidates
+     * @return -1 if a unit cannot be completed, 1 if a candidate was removed, 0 otherwise
+     */
+    private int singles(long[] candidates) {
+        int result = 0;
+        long all = -1L >>> (64 - d);
+        for(int u = 0; u < units.length; ++u) {
+            long fixed = 0;
+            for(int idx : units[u])
+                if(Long.bitCount(candidates[idx]) == 1) {
+                    if((fixed & candidates[idx]) != 0)
+                        return -1;
+                    fixed |= candidates[idx];
+                }
+            long once = 0, twice = 0;
+            for(int idx : units[u]) {
+                if(Long.bitCount(candidates[idx]) > 1 && (candidates[idx] & fixed) != 0) {
+                    if((candidates[idx] &= ~fixed) == 0)
+                        return -1;
+                    result = 1;
+                }
+                twice |= once & candidates[idx];
+                once |= candidates[idx];
+            }
+            if(u >= unitCount)
+                continue;
+            if((all & ~placed[u] & ~once) != 0)     //A value with no cell left
+                return -1;
+            long hidden = once & ~twice & ~fixed;
+            for(int idx : units[u]) {
+                long value = candidates[idx] & hidden;
+                if(Long.bitCount(value) > 1)
+                    return -1;
+                if(value != 0) {
+                    candidates[idx] = value;
+                    result = 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps the candidates of a group that appear in some assignment of its empty cells reaching its sum
+     * @param g             The group
+     * @param candidates    The candidates
+     * @return -1 if no assignment reaches the sum, 1 if a candidate was removed, 0 otherwise
+     */
+    private int sums(int g, long[] candidates) {
+        int[] group = groups[g];
+        int empty = 0, sum = 0;
+        long used = 0;
+        for(int idx : group)
+            if(game.isCellEmpty(game.get(idx)))
+                ++empty;
+            else {
+                sum += game.get(idx);
+                used |= 1L << (game.get(idx) - 1);
+            }
+        remaining = groupSums[g] - sum;
+        if(g < cages)
+            required[g] = 0;
+        if(empty == 0)
+            return remaining == 0 ? 0 : -1;
+
+        cells = new int[empty];
+        options = new long[empty];
+        support = new long[empty];
+        minRest = new int[empty + 1];
+        maxRest = new int[empty + 1];
+        for(int idx : group)
+            if(game.isCellEmpty(game.get(idx)))
+                cells[--empty] = idx;
+        for(int k = cells.length - 1; k >= 0; --k) {
+            options[k] = candidates[cells[k]];
+            minRest[k] = minRest[k + 1] + Long.numberOfTrailingZeros(options[k]) + 1;
+            maxRest[k] = maxRest[k + 1] + 64 - Long.numberOfLeadingZeros(options[k]);
+        }
+        if(remaining < minRest[0] || remaining > maxRest[0])
+            return -1;
+
+        boolean sets = distinct[g] && d <= MAX_SET_DIMENSION;
+        int states = sets ? 1 << d : cells.length*(remaining + 1);
+        if(stamps.length < states) {
+            stamps = new int[states];
+            feasible = new boolean[states];
+            stamp = 0;
+        }
+        ++stamp;
+        reached = -1;
+        if(!(sets ? searchSets(0, used, 0) : searchSums(0, 0)))
+            return -1;
+        if(sets && g < cages)
+            required[g] = reached & ~used;
+
+        int result = 0;
+        for(int k = 0; k < cells.length; ++k)
+            if(candidates[cells[k]] != support[k]) {
+                candidates[cells[k]] = support[k];
+                result = 1;
+            }
+        return result;
+    }
+
+    /**
+     * Searches the assignments of distinct values of a group from a cell on, recording the values that lead to one
+     * @param k     The position of the cell in the group
+     * @param used  The values used so far
+     * @param sum   Their sum, less the filled cells
+     * @return true if the rest of the cells can reach the sum, false otherwise
+     */
+    private boolean searchSets(int k, long used, int sum) {
+        if(k == cells.length) {
+            if(sum != remaining)
+                return false;
+            reached &= used;
+            return true;
+        }
+        if(sum + minRest[k] > remaining || sum + maxRest[k] < remaining)
+            return false;
+        int state = (int) used;     //The used values also tell the position and the sum
+        if(stamps[state] == stamp)
+            return feasible[state];
+        boolean result = false;
+        for(long rest = options[k] & ~used; rest != 0; rest &= rest - 1) {
+            long bit = rest & -rest;
+            if(searchSets(k + 1, used | bit, sum + Long.numberOfTrailingZeros(bit) + 1)) {
+                support[k] |= bit;
+                result = true;
+            }
+        }
+        stamps[state] = stamp;
+        feasible[state] = result;
+        return result;
+    }
+
+    /**
+     * Searches the assignments of a group from a cell on, allowing repeated values, recording the values that lead
+     * to one
+     * @param k     The position of the cell in the group
+     * @param sum   The sum so far, less the filled cells
+     * @return true if the rest of the cells can reach the sum, false otherwise
+     */
+    private boolean searchSums(int k, int sum) {
+        if(k == cells.length)
+            return sum == remaining;
+        if(sum + minRest[k] > remaining || sum + maxRest[k] < remaining)
+            return false;
+        int state = k*(remaining + 1) + sum;
+        if(stamps[state] == stamp)
+            return feasible[state];
+        boolean result = false;
+        for(long rest = options[k]; rest != 0; rest &= rest - 1) {
+            long bit = rest & -rest;
+            if(searchSums(k + 1, sum + Long.numberOfTrailingZeros(bit) + 1)) {
+                support[k] |= bit;
+                result = true;
+            }
+        }
+        stamps[state] = stamp;
+        feasible[state] = result;
+        return result;
+    }
+
+    /**
+     * Removes the candidates ruled out by a cage and a unit sharing the only cells of a value
+     * @param candidates The candidates
+     * @return -1 if a cell has no candidates left, 1 if a candidate was removed, 0 otherwise
+     */
+    private int intersections(long[] candidates) {
+        int result = 0;
+        //A value the cage must hold, in cells of the cage sharing a unit: not elsewhere in the unit
+        for(int g = 0; g < cages; ++g)
+            for(long rest = required[g]; rest != 0; rest &= rest - 1) {
+                long bit = rest & -rest;
+                for(int t = 0; t < 3; ++t) {
+                    int unit = -1;
+                    for(int idx : groups[g])
+                        if((candidates[idx] & bit) != 0 && unit != -2)
+                            unit = unit == -1 || unit == unitsOf[idx][t] ? unitsOf[idx][t] : -2;
+                    if(unit < 0)
+                        continue;
+                    for(int idx : units[unit])
+                        if(Arrays.binarySearch(groups[g], idx) < 0 && (candidates[idx] & bit) != 0) {
+                            if((candidates[idx] &= ~bit) == 0)
+                                return -1;
+                            result = 1;
+                        }
+                }
+            }
+        //A value whose cells in a unit all lie in one cage: not elsewhere in the cage
+        for(int u = 0; u < unitCount; ++u)
+            for(long rest = ~placed[u] & -1L >>> (64 - d); rest != 0; rest &= rest - 1) {
+                long bit = rest & -rest;
+                int cage = -1;
+                for(int idx : units[u])
+                    if((candidates[idx] & bit) != 0 && cage != -2)
+                        cage = cageOf[idx] != -1 && (cage == -1 || cage == cageOf[idx]) ? cageOf[idx] : -2;
+                if(cage < 0)
+                    continue;
+                for(int idx : groups[cage])
+                    if(!inUnit(idx, u) && (candidates[idx] & bit) != 0) {
+                        if((candidates[idx] &= ~bit) == 0)
+                            return -1;
+                        result = 1;
+                    }
+            }
+        return result;
+    }
+
+    /**
+     * Checks if a cell belongs to a unit
+     * @param idx   The cell
+     * @param u     The unit
+     * @return true if the unit is the row, column or box of the cell, false otherwise
+     */
+    private boolean inUnit(int idx, int u) {
+        return unitsOf[idx][0] == u || unitsOf[idx][1] == u || unitsOf[idx][2] == u;
+    }
+}
@@ -11,12 +11,7 @@ public abstract class Placer {
      * @return The raw index of the empty cell on the board or -1 if no empty cell
      */
     private static int findNextEmptyCell(Sudoku game) {
-        int d = game.getBoardDimension();
-        
-        for(int i = 0; i < d*d; ++i)
-            if(game.isCellEmpty(game.get(i)))
-                return i;
-        return -1;
+        return game.findEmptyCell(0);
     }
     
     /** The game */
@@ -0,0 +1,172 @@
+package core.game.solvers;
+
+import core.game.sudoku.Sudoku;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Solves the sudoku game by racing several solvers, each on its own copy of the board. The first one to solve its
+ * copy wins, the others are cancelled (interrupted) and the solution is placed on the game in a single batch.
+ * <br>
+ * When there are fewer threads than solvers, the ones that start first matter. The portfolio records, for each kind
+ * of puzzle (variant, size and how full the board is), how often each solver won the races it ran in and starts the
+ * likeliest winners first.
+ */
+public class PortfolioSolver implements SudokuSolver {
+
+    //The solvers, in their configured order
+    private final SudokuSolver[] engines;
+    //The threads that run them
+    private final ExecutorService executor;
+    //For each kind of puzzle, the races each solver ran in and won; guarded by itself
+    private final Map<String, int[][]> statistics = new HashMap<>();
+
+    /**
+     * Constructs a portfolio
+     * @param engines   The solvers, which must be safe to use from many threads at once; the configured order breaks
+     *                  the ties
+     * @param threads   The number of solvers that run at once
+     */
+    public PortfolioSolver(List<? extends SudokuSolver> engines, int threads) {
+        if(engines == null)
+            throw new NullPointerException("Engines is null");
+        if(engines.isEmpty())
+            throw new IllegalArgumentException("Engines is empty");
+        if(threads <= 0)
+            throw new IllegalArgumentException("Threads is not positive");
+        this.engines = engines.toArray(new SudokuSolver[0]);
+
+        AtomicInteger created = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "portfolio-solver-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //Races the solvers and places the first solution
+    @Override
+    public boolean solve(Sudoku game) {
+        String kind = kindOf(game);
+        Integer[] order = order(kind);
+        AtomicIntegerArray started = new AtomicIntegerArray(engines.length);
+        AtomicBoolean over = new AtomicBoolean();
+
+        CompletionService<Sudoku> race = new ExecutorCompletionService<>(executor);
+        List<Future<Sudoku>> futures = new ArrayList<>();
+        for(int e : order) {
+            Sudoku copy = game.copy();
+            futures.add(race.submit(() -> {
+                if(over.get())      //Decided before this one got a thread
+                    return null;
+                started.set(e, 1);
+                if(!engines[e].solve(copy))
+                    return null;
+                over.set(true);
+                return copy;
+            }));
+        }
+
+        Sudoku solution = null;
+        int winner = -1;
+        try {
+            for(int k = 0; k < futures.size() && solution == null; ++k) {
+                Future<Sudoku> done = race.take();
+                try {
+                    solution = done.get();
+                    winner = order[futures.indexOf(done)];
+                } catch(ExecutionException e) {     //A solver that fails loses
+                    solution = null;
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            solution = null;
+        } finally {
+            over.set(true);
+            for(Future<Sudoku> future : futures)
+                future.cancel(true);
+        }
+        record(kind, started, solution != null ? winner : -1);
+
+        if(solution == null)
+            return false;
+        game.beginBatch();
+        try {
+            int cells = game.getBoardDimension()*game.getBoardDimension();
+            for(int i = 0; i < cells; ++i)
+                if(game.isCellEmpty(game.get(i)) && !game.place(i, solution.get(i)))
+                    return false;
+        } finally {
+            game.endBatch();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the order the solvers start in for a game
+     * @param game The game
+     * @return the indices of the solvers in the configured list, the likeliest winner first
+     */
+    public int[] getOrder(Sudoku game) {
+        return Arrays.stream(order(kindOf(game))).mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Stops the threads, cancelling any race */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Orders the solvers by their estimated chance to win a race on a kind of puzzle
+     * @param kind The kind of puzzle
+     * @return the indices of the solvers
+     */
+    private Integer[] order(String kind) {
+        Integer[] order = new Integer[engines.length];
+        for(int e = 0; e < order.length; ++e)
+            order[e] = e;
+        double[] chance = new double[engines.length];
+        synchronized(statistics) {
+            int[][] counts = statistics.get(kind);
+            for(int e = 0; e < engines.length; ++e)     //Untried ones first, then wins over races, made up to one of two
+                chance[e] = counts == null || counts[e][0] == 0 ? 1 : (counts[e][1] + 1.0) / (counts[e][0] + 2.0);
+        }
+        Arrays.sort(order, Comparator.comparingDouble(e -> -chance[e]));  //Stable, so ties keep the configured order
+        return order;
+    }
+
+    /**
+     * Records a race
+     * @param kind      The kind of puzzle
+     * @param started   Which solvers ran
+     * @param winner    The winner, -1 for none
+     */
+    private void record(String kind, AtomicIntegerArray started, int winner) {
+        synchronized(statistics) {
+            int[][] counts = statistics.computeIfAbsent(kind, k -> new int[engines.length][2]);
+            for(int e = 0; e < engines.length; ++e)
+                if(started.get(e) == 1)
+                    counts[e][0]++;
+            if(winner != -1)
+                counts[winner][1]++;
+        }
+    }
+
+    /**
+     * Describes the kind of a puzzle: its variant, its size and how full it is, in quarters
+     * @param game The game
+     * @return the kind
+     */
+    private static String kindOf(Sudoku game) {
+        int cells = game.getBoardDimension()*game.getBoardDimension(), filled = 0;
+        for(int i = 0; i < cells; ++i)
+            if(!game.isCellEmpty(game.get(i)))
+                ++filled;
+        return game.getClass().getSimpleName() + "/" + game.getBoardDimension() + "/" + filled*4/Math.max(1, cells);
+    }
+}
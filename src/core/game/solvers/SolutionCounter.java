@@ -0,0 +1,142 @@
+package core.game.solvers;
+
+/**
+ * Counts the solutions of a standard sudoku board, up to a limit.
+ * <br>
+ * Works directly on a raw board with one digit mask per row, column and box and always branches on the
+ * empty cell with the fewest candidates. Supports boards up to 63x63.
+ */
+public final class SolutionCounter {
+
+    //The board (0 = empty)
+    private final int[] board;
+    //The board and box dimensions
+    private final int d, b;
+    //The digits used by each row, column and box (bit v-1 for digit v)
+    private final long[] rows, columns, boxes;
+    //The mask of all digits
+    private final long all;
+    //The number of solutions to stop at
+    private int limit;
+    //The number of solutions found
+    private int count;
+
+    /**
+     * Checks if the givens of a board do not repeat in any row, column or box
+     * @param board The board in row major order (0 = empty)
+     * @param d     The board dimension
+     * @param b     The box dimension
+     * @return true if the givens are legal, false otherwise
+     */
+    public static boolean isLegal(int[] board, int d, int b) {
+        return new SolutionCounter(board, d, b).count != -1;
+    }
+
+    /**
+     * Counts the solutions of a board
+     * @param board The board in row major order (0 = empty), left untouched
+     * @param d     The board dimension
+     * @param b     The box dimension
+     * @param limit The number of solutions to stop at
+     * @return the number of solutions, at most limit (0 if the givens are not legal)
+     */
+    public static int count(int[] board, int d, int b, int limit) {
+        SolutionCounter counter = new SolutionCounter(board.clone(), d, b);
+        if(counter.count == -1)
+            return 0;
+        counter.limit = limit;
+        counter.search();
+        return counter.count;
+    }
+
+    /**
+     * Sets up the masks of a board
+     * @param board The board (by reference)
+     * @param d     The board dimension
+     * @param b     The box dimension
+     */
+    private SolutionCounter(int[] board, int d, int b) {
+        if(d > 63)
+            throw new IllegalArgumentException("Board is larger than 63x63");
+        if(board.length != d*d)
+            throw new IllegalArgumentException("Board is not a square");
+
+        this.board = board;
+        this.d = d;
+        this.b = b;
+        rows    = new long[d];
+        columns = new long[d];
+        boxes   = new long[d];
+        all = (1L << d) - 1;
+
+        for(int k = 0; k < d*d; ++k) {
+            int v = board[k];
+            if(v == 0)
+                continue;
+            long bit = 1L << (v - 1);
+            int i = k % d, j = k / d, x = box(i, j);
+            if(v < 0 || v > d || ((rows[j] | columns[i] | boxes[x]) & bit) != 0) { //Out of range or repeated
+                count = -1;
+                return;
+            }
+            rows[j] |= bit;
+            columns[i] |= bit;
+            boxes[x] |= bit;
+        }
+    }
+
+    /**
+     * Returns the box of a cell
+     * @param i The column
+     * @param j The row
+     * @return the index of the box
+     */
+    private int box(int i, int j) {
+        return (j/b)*(d/b) + i/b;
+    }
+
+    /** Counts the solutions of the current board recursively */
+    private void search() {
+        int best = -1;              //The empty cell with the fewest candidates
+        long bestCandidates = 0;
+        int bestCount = Integer.MAX_VALUE;
+
+        for(int k = 0; k < d*d; ++k) {
+            if(board[k] != 0)
+                continue;
+            int i = k % d, j = k / d;
+            long candidates = all & ~(rows[j] | columns[i] | boxes[box(i, j)]);
+            int n = Long.bitCount(candidates);
+            if(n < bestCount) {
+                best = k;
+                bestCandidates = candidates;
+                bestCount = n;
+                if(n <= 1)
+                    break;
+            }
+        }
+
+        if(best == -1) {    //No empty cell, a solution
+            count++;
+            return;
+        }
+
+        int i = best % d, j = best / d, x = box(i, j);
+        while(bestCandidates != 0 && count < limit) {
+            long bit = Long.lowestOneBit(bestCandidates);
+            bestCandidates ^= bit;
+
+            board[best] = Long.numberOfTrailingZeros(bit) + 1;
+            rows[j] |= bit;
+            columns[i] |= bit;
+            boxes[x] |= bit;
+
+            search();
+
+            rows[j] ^= bit;
+            columns[i] ^= bit;
+            boxes[x] ^= bit;
+        }
+        board[best] = 0;
+    }
+}
@@ -0,0 +1,432 @@
+package core.game.sudoku;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The cells of a board, stored as compactly as their values allow.
+ * <br>
+ * Three layouts hold the same values: an int per cell, a byte per cell (values up to 255) and a nibble per cell
+ * packed 16 to a long (values up to 15). A 9x9 board takes 324 bytes as ints, 81 as bytes and 48 as nibbles, so jobs
+ * that hold millions of boards should use {@link #of(int, int)}, which picks the smallest layout for the values. A
+ * {@link Sudoku} keeps its cells in a storage, an int array by default.
+ * <br>
+ * Copies and comparisons between storages of the same layout copy and compare whole arrays.
+ */
+public abstract class BoardStorage {
+
+    /** The largest value of each layout */
+    public static final int NIBBLE_MAX = 15, BYTE_MAX = 255;
+
+    /**
+     * Creates an empty storage in the smallest layout for a range of values
+     *
+     * @param size      The number of cells
+     * @param maxValue  The largest value to store
+     *
+     * @return the storage, all cells 0
+     *
+     * @throws IllegalArgumentException if the size or the largest value is negative
+     */
+    public static BoardStorage of(int size, int maxValue) {
+        if( size < 0 )
+            throw new IllegalArgumentException("Size is negative");
+        if( maxValue < 0 )
+            throw new IllegalArgumentException("Max value is negative");
+        if( maxValue <= NIBBLE_MAX )
+            return new Nibbles(size);
+        if( maxValue <= BYTE_MAX )
+            return new Bytes(new byte[size]);
+        return new Ints(new int[size]);
+    }
+
+    /**
+     * Stores the cells in an int array
+     *
+     * @param values The values of the cells (by reference)
+     *
+     * @return the storage
+     *
+     * @throws NullPointerException if the values is null
+     */
+    public static BoardStorage wrap(int[] values) {
+        if( values == null )
+            throw new NullPointerException("Values is null");
+        return new Ints(values);
+    }
+
+    /**
+     * Returns the number of cells
+     *
+     * @return the number of cells
+     */
+    public abstract int size();
+
+    /**
+     * Returns the largest value the layout holds
+     *
+     * @return the largest value
+     */
+    public abstract int maxValue();
+
+    /**
+     * Returns the value of a cell
+     *
+     * @param i The index of the cell
+     *
+     * @return the value
+     */
+    public abstract int get(int i);
+
+    /**
+     * Sets the value of a cell
+     *
+     * @param i The index of the cell
+     * @param v The value, in [0, {@link #maxValue()}]
+     *
+     * @throws IllegalArgumentException if the layout does not hold the value
+     */
+    public abstract void set(int i, int v);
+
+    /**
+     * Creates a copy in the same layout
+     *
+     * @return the copy
+     */
+    public abstract BoardStorage copy();
+
+    /**
+     * Creates an empty storage of the same size and layout
+     *
+     * @return the storage, all cells 0
+     */
+    public abstract BoardStorage emptyCopy();
+
+    /**
+     * Copies all the cells of an other storage
+     *
+     * @param other The other storage, of the same size
+     *
+     * @throws IllegalArgumentException if the sizes differ or this layout does not hold a value
+     */
+    public void copyFrom(BoardStorage other) {
+        checkSize(other);
+        for(int i = 0; i < size(); ++i)
+            set(i, other.get(i));
+    }
+
+    /**
+     * Checks if an other storage holds the same values, in any layout
+     *
+     * @param other The other storage
+     *
+     * @return true if the sizes and all the values are equal, false otherwise
+     */
+    public boolean contentEquals(BoardStorage other) {
+        if( other.size() != size() )
+            return false;
+        for(int i = 0; i < size(); ++i)
+            if( other.get(i) != get(i) )
+                return false;
+        return true;
+    }
+
+    /**
+     * Finds the first cell with a value, such as the first empty cell
+     *
+     * @param v     The value
+     * @param from  The index of the first cell to look at
+     *
+     * @return the index of the cell, -1 if no cell from there has the value
+     */
+    public int indexOf(int v, int from) {
+        for(int i = Math.max(from, 0); i < size(); ++i)
+            if( get(i) == v )
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns the values in an int array
+     *
+     * @return a new array with the value of each cell
+     */
+    public int[] toArray() {
+        int[] values = new int[size()];
+        for(int i = 0; i < values.length; ++i)
+            values[i] = get(i);
+        return values;
+    }
+
+    //Storages are equal when they hold the same values, in any layout
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BoardStorage && contentEquals((BoardStorage) obj);
+    }
+
+    //The hash of the values, the same in every layout
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for(int i = 0; i < size(); ++i)
+            hash = 31*hash + get(i);
+        return hash;
+    }
+
+    /**
+     * Checks that an other storage has the same size
+     *
+     * @param other The other storage
+     *
+     * @throws IllegalArgumentException if the sizes differ
+     */
+    void checkSize(BoardStorage other) {
+        if( other.size() != size() )
+            throw new IllegalArgumentException("Boards differ in size");
+    }
+
+    /**
+     * Checks that a value fits the layout
+     *
+     * @param v The value
+     *
+     * @throws IllegalArgumentException if it does not
+     */
+    void checkValue(int v) {
+        if( v < 0 || v > maxValue() )
+            throw new IllegalArgumentException("Value " + v + " is not in [0, " + maxValue() + "]");
+    }
+
+    /** An int per cell */
+    private static final class Ints extends BoardStorage {
+
+        /** The values */
+        private final int[] values;
+
+        /**
+         * Wraps the values
+         *
+         * @param values The values (by reference)
+         */
+        Ints(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public int maxValue() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public void set(int i, int v) {
+            if( v < 0 )
+                checkValue(v);
+            values[i] = v;
+        }
+
+        @Override
+        public BoardStorage copy() {
+            return new Ints(values.clone());
+        }
+
+        @Override
+        public BoardStorage emptyCopy() {
+            return new Ints(new int[values.length]);
+        }
+
+        @Override
+        public void copyFrom(BoardStorage other) {
+            if( other instanceof Ints ) {
+                checkSize(other);
+                System.arraycopy(((Ints) other).values, 0, values, 0, values.length);
+            } else
+                super.copyFrom(other);
+        }
+
+        @Override
+        public boolean contentEquals(BoardStorage other) {
+            if( other instanceof Ints )
+                return Arrays.equals(values, ((Ints) other).values);
+            return super.contentEquals(other);
+        }
+
+        @Override
+        public int[] toArray() {
+            return values.clone();
+        }
+    }
+
+    /** A byte per cell */
+    private static final class Bytes extends BoardStorage {
+
+        /** The values, unsigned */
+        private final byte[] values;
+
+        /**
+         * Wraps the values
+         *
+         * @param values The values (by reference)
+         */
+        Bytes(byte[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public int maxValue() {
+            return BYTE_MAX;
+        }
+
+        @Override
+        public int get(int i) {
+            return values[i] & 0xFF;
+        }
+
+        @Override
+        public void set(int i, int v) {
+            if( (v & ~BYTE_MAX) != 0 )
+                checkValue(v);
+            values[i] = (byte) v;
+        }
+
+        @Override
+        public BoardStorage copy() {
+            return new Bytes(values.clone());
+        }
+
+        @Override
+        public BoardStorage emptyCopy() {
+            return new Bytes(new byte[values.length]);
+        }
+
+        @Override
+        public void copyFrom(BoardStorage other) {
+            if( other instanceof Bytes ) {
+                checkSize(other);
+                System.arraycopy(((Bytes) other).values, 0, values, 0, values.length);
+            } else
+                super.copyFrom(other);
+        }
+
+        @Override
+        public boolean contentEquals(BoardStorage other) {
+            if( other instanceof Bytes )
+                return Arrays.equals(values, ((Bytes) other).values);
+            return super.contentEquals(other);
+        }
+    }
+
+    /** A nibble per cell, cell i in bits 4*(i%16) of word i/16 */
+    private static final class Nibbles extends BoardStorage {
+
+        /** The packed values, the bits after the last cell 0 */
+        private final long[] words;
+        /** The number of cells */
+        private final int size;
+
+        /**
+         * Constructs an empty storage
+         *
+         * @param size The number of cells
+         */
+        Nibbles(int size) {
+            this(new long[(size + 15) >>> 4], size);
+        }
+
+        /**
+         * Wraps the packed values
+         *
+         * @param words The packed values (by reference)
+         * @param size  The number of cells
+         */
+        private Nibbles(long[] words, int size) {
+            this.words = words;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int maxValue() {
+            return NIBBLE_MAX;
+        }
+
+        @Override
+        public int get(int i) {
+            Objects.checkIndex(i, size);
+            return (int) (words[i >>> 4] >>> (i << 2)) & 0xF;    //A shift of a long takes its low 6 bits, 4*(i%16)
+        }
+
+        @Override
+        public void set(int i, int v) {
+            Objects.checkIndex(i, size);
+            if( (v & ~NIBBLE_MAX) != 0 )
+                checkValue(v);
+            words[i >>> 4] = words[i >>> 4] & ~(0xFL << (i << 2)) | (long) v << (i << 2);
+        }
+
+        //Looks at 16 cells per step: a nibble of the word xor 16 copies of v is 0 exactly where a cell has v
+        @Override
+        public int indexOf(int v, int from) {
+            if( (v & ~NIBBLE_MAX) != 0 )
+                return -1;
+            from = Math.max(from, 0);
+            long copies = v * 0x1111111111111111L;
+            for(int w = from >>> 4; w < words.length; ++w) {
+                long x = words[w] ^ copies;
+                if( w == from >>> 4 )   //Skip the cells before from
+                    x |= (1L << ((from & 15) << 2)) - 1;
+                //The lowest bit marks the lowest 0 nibble, the borrows only mark the ones above it
+                long zeros = (x - 0x1111111111111111L) & ~x & 0x8888888888888888L;
+                if( zeros != 0 ) {
+                    int i = (w << 4) + (Long.numberOfTrailingZeros(zeros) >>> 2);
+                    return i < size ? i : -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public BoardStorage copy() {
+            return new Nibbles(words.clone(), size);
+        }
+
+        @Override
+        public BoardStorage emptyCopy() {
+            return new Nibbles(size);
+        }
+
+        @Override
+        public void copyFrom(BoardStorage other) {
+            if( other instanceof Nibbles ) {
+                checkSize(other);
+                System.arraycopy(((Nibbles) other).words, 0, words, 0, words.length);
+            } else
+                super.copyFrom(other);
+        }
+
+        @Override
+        public boolean contentEquals(BoardStorage other) {
+            if( other instanceof Nibbles )
+                return size == other.size() && Arrays.equals(words, ((Nibbles) other).words);
+            return super.contentEquals(other);
+        }
+    }
+}
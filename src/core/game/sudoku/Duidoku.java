@@ -1,44 +1,123 @@
 package core.game.sudoku;
 
 import core.game.User;
-import core.game.solvers.SimplePlacer;
+import core.game.solvers.DuidokuTablebase;
+
+import java.util.Random;
 
 public class Duidoku extends Sudoku {
     /** The Standard Duidoku Board Size */
     public static int BOARD_DIMENSION_SIZE = 4;
     /** The Standard Duidoku Box Size */
     public static int BOX_DIMENSION_SIZE   = 2;
+    
+    /** A player of duidoku, such as the AI */
+    public interface Player {
+        /**
+         * Chooses a move, without placing it
+         *
+         * @param game      The game, to be left as it was
+         * @param random    The randomness the player may use
+         *
+         * @return the move as i*d + v - 1 for the value v on the raw index i, -1 if there is none
+         */
+        int nextMove(Duidoku game, Random random);
+    }
+    
+    /** The levels of the AI */
+    public enum Level implements Player {
+        /** Places the smallest value on the first cell that takes one */
+        SIMPLE {
+            @Override
+            public int nextMove(Duidoku game, Random random) {
+                for(int i = 0; i < game.moves.length; ++i)  //The first cell with a move
+                    if(game.moves[i] != 0)                  //Its smallest value
+                        return i*game.getBoardDimension() + Long.numberOfTrailingZeros(game.moves[i]);
+                return -1;
+            }
+        },
+        /** Plays the quickest win, or else the slowest loss, looked up in the {@link DuidokuTablebase} */
+        PERFECT {
+            @Override
+            public int nextMove(Duidoku game, Random random) {
+                if(game.getBoardDimension() != 4 || game.getBoxDimension() != 2)    //Only the 4x4 board is solved
+                    return SIMPLE.nextMove(game, random);
+                return DuidokuTablebase.get().bestMove(game);
+            }
+        },
+        /** Plays any move */
+        RANDOM {
+            @Override
+            public int nextMove(Duidoku game, Random random) {
+                int[] moves = game.listMoves();
+                return moves.length == 0 ? -1 : moves[random.nextInt(moves.length)];
+            }
+        }
+    }
+    
+    /** The AI */
+    private Player opponent = Level.SIMPLE;
+    /** The randomness of the AI */
+    private final Random random = new Random();
     /** Denotes if the player is to place or the AI */
     private boolean playerMove = true;
+    /** The legal moves: the values each cell can take, bit v - 1 for value v, kept on every change */
+    private final long[] moves;
+    /** The number of legal moves */
+    private int moveCount = 0;
     
     /**
      * Constructs a Standard duidoku game
      */
     public Duidoku(User user) {
         super("", user, new int[BOARD_DIMENSION_SIZE*BOARD_DIMENSION_SIZE], BOARD_DIMENSION_SIZE, BOX_DIMENSION_SIZE);
+        moves = new long[BOARD_DIMENSION_SIZE*BOARD_DIMENSION_SIZE];
+        for(int i = 0; i < moves.length; ++i)
+            updateMoves(i);
+    }
+    
+    @Override
+    public Duidoku copy() {
+        Duidoku copy = new Duidoku(new User(getUser().getName()));
+        copy.copyCells(this);
+        copy.playerMove = playerMove;
+        copy.opponent = opponent;
+        return copy;
+    }
+    
+    //The AI always answers within the move, so a game between moves is the player's move
+    @Override
+    public Snapshot snapshot() {
+        Player opponent = this.opponent;
+        return new Snapshot(this, owner -> {
+            Duidoku game = new Duidoku(owner);
+            game.opponent = opponent;
+            return game;
+        });
     }
     
     /** Places the next AI move */
     public boolean nextAIMove() {
+        int move = opponent.nextMove(this, random);
         int d = getBoardDimension();
-        int dd = d*d;
-        
-        for(int i = 0; i < dd; ++i)                     //Linear search
-            if(new SimplePlacer(this, i).placeNext())   //Place where ever
-                return true;                            //If any place happens return true
-        return false;                                   //Else false
+        return move != -1 && place(move/d, move%d + 1);    //If there is no move false
     }
     
     //Places for the AI as well if its not player move
     @Override
     public boolean place(int i, int v) {
-        if(super.place(i, v)) {         //If move was successful
-            playerMove = !playerMove;   //Toggle playerMove
-            if(!playerMove)             //If it was a player move
-                nextAIMove();           //Make an AI move
-            return true;                //Return true since the move was legal
+        beginBatch();                       //The player and the AI move are one update
+        try {
+            if(super.place(i, v)) {         //If move was successful
+                playerMove = !playerMove;   //Toggle playerMove
+                if(!playerMove)             //If it was a player move
+                    nextAIMove();           //Make an AI move
+                return true;                //Return true since the move was legal
+            }
+            return false;                   //Else false
+        } finally {
+            endBatch();
         }
-        return false;                   //Else false
     }
     
     @Override
@@ -46,6 +125,76 @@ public class Duidoku extends Sudoku {
         return isCellEmpty(get(i,j)) && super.canPlace(i, j, v);
     }
     
+    //Keeps the moves of the cell and of the cells sharing a unit with it
+    @Override
+    protected void onCellChanged(int i, int old) {
+        int d = getBoardDimension(), b = getBoxDimension();
+        int ci = i%d, cj = i/d;
+        for(int k = 0; k < d; ++k) {
+            updateMoves(k + cj*d);      // The row
+            updateMoves(ci + k*d);      // The column
+        }
+        int bi = (ci/b)*b, bj = (cj/b)*b;
+        for(int lj = bj; lj < bj + b; ++lj)     // The box
+            for(int li = bi; li < bi + b; ++li)
+                updateMoves(li + lj*d);
+    }
+    
+    /**
+     * Updates the moves of a cell from its candidates, which are the values {@link #canPlace(int, int)} accepts
+     *
+     * @param i The raw index of the cell
+     */
+    private void updateMoves(int i) {
+        long now = getCandidates(i);
+        moveCount += Long.bitCount(now) - Long.bitCount(moves[i]);
+        moves[i] = now;
+    }
+    
+    /**
+     * Checks if there is a legal move left
+     *
+     * @return true if some value can be placed on some cell, false otherwise
+     */
+    public boolean hasMoves() {
+        return moveCount > 0;
+    }
+    
+    /**
+     * Returns the number of legal moves
+     *
+     * @return the number of (cell, value) pairs that can be placed
+     */
+    public int getMoveCount() {
+        return moveCount;
+    }
+    
+    /**
+     * Returns the legal moves of a cell
+     *
+     * @param i The raw index of the cell
+     *
+     * @return the values that can be placed on the cell, bit v - 1 for value v
+     */
+    public long getMoves(int i) {
+        return moves[i];
+    }
+    
+    /**
+     * Lists the legal moves, by cell and then by value
+     *
+     * @return the moves, each as i*d + v - 1 for the value v on the raw index i
+     */
+    public int[] listMoves() {
+        int d = getBoardDimension();
+        int[] list = new int[moveCount];
+        int k = 0;
+        for(int i = 0; i < moves.length; ++i)
+            for(long rest = moves[i]; rest != 0; rest &= rest - 1)
+                list[k++] = i*d + Long.numberOfTrailingZeros(rest);
+        return list;
+    }
+    
     @Override
     public void reset(int i) {
         //Empty
@@ -56,9 +205,14 @@ public class Duidoku extends Sudoku {
         return place(i, v);//Since you cant replace on duidoku
     }
     
+    @Override
+    public boolean enter(int i, int v) {
+        return place(i, v);//Since the rules are the game on duidoku
+    }
+    
     @Override
     public boolean isComplete() {
-        return super.isComplete() || !canMakeProgress();
+        return super.isComplete() || !hasMoves();
     }
     
     @Override
@@ -73,15 +227,21 @@ public class Duidoku extends Sudoku {
         return playerMove;
     }
     
-    private boolean canMakeProgress() {
-        int d = getBoardDimension();
-        
-        for(int j = 0; j < d; ++j)
-            for(int i = 0; i < d; ++i)
-                for(int v = 1; v <= d; ++v)
-                    if(canPlace(i, j, v))
-                        return true;
-                    
-        return false;
+    /**
+     * Getter for the AI
+     * @return the player that answers the moves of the player
+     */
+    public Player getOpponent() {
+        return opponent;
+    }
+    
+    /**
+     * Setter for the AI
+     * @param opponent The player that answers the moves of the player from the next move on, such as a {@link Level}
+     */
+    public void setOpponent(Player opponent) {
+        if(opponent == null)
+            throw new NullPointerException("Opponent is null");
+        this.opponent = opponent;
     }
 }
@@ -8,6 +8,19 @@ import java.util.*;
 public class KillerSudoku extends Sudoku {
     
     final Set<Area>  areas;
+    /** The areas in iteration order */
+    private final Area[] areaList;
+    /** The area of each cell, -1 for none */
+    private final int[] areaOf;
+    /** The further areas of the cells in more than one area, null for the others */
+    private final int[][] moreAreasOf;
+    /** The sum of the values and the number of empty cells of each area */
+    private final int[] areaSums, areaEmpty;
+    /** The values each area can still take with distinct values, bit v - 1 for v, computed on demand */
+    private final long[] areaCandidates;
+    private final boolean[] areaCandidatesValid;
+    /** The number of areas that break their sum */
+    private int badAreas = 0;
     
     /**
      * Constructs a {@link KillerSudoku} game from the given areas and the board/box sizes
@@ -26,6 +39,42 @@ public class KillerSudoku extends Sudoku {
             throw new NullPointerException("Areas is null");
         
         this.areas = Collections.unmodifiableSet(areas);
+        
+        areaList = areas.toArray(new Area[0]);
+        areaOf = new int[boardDimensionSize*boardDimensionSize];
+        moreAreasOf = new int[areaOf.length][];
+        areaSums = new int[areaList.length];
+        areaEmpty = new int[areaList.length];
+        areaCandidates = new long[areaList.length];
+        areaCandidatesValid = new boolean[areaList.length];
+        Arrays.fill(areaOf, -1);
+        for(int a = 0; a < areaList.length; ++a) {
+            for(int k = 0; k < areaList[a].getCellCount(); ++k) {
+                int idx = areaList[a].getCell(k);
+                if( idx < 0 || idx >= areaOf.length )
+                    throw new IllegalArgumentException("Area cell is outside the board");
+                if( areaOf[idx] == -1 ) // A cell in more than one area belongs to the first
+                    areaOf[idx] = a;
+                else                    // But counts in the sums of all
+                    moreAreasOf[idx] = moreAreasOf[idx] == null ? new int[]{a} : append(moreAreasOf[idx], a);
+            }
+            areaEmpty[a] = areaList[a].getCellCount();
+        }
+    }
+    
+    @Override
+    public KillerSudoku copy() {
+        KillerSudoku copy = new KillerSudoku(getName(), new User(getUser().getName()), areas, getBoardDimension(), getBoxDimension());
+        copy.copyCells(this);
+        return copy;
+    }
+    
+    @Override
+    public Snapshot snapshot() {
+        String name = getName();
+        Set<Area> areas = this.areas;
+        int d = getBoardDimension(), b = getBoxDimension();
+        return new Snapshot(this, owner -> new KillerSudoku(name, owner, areas, d, b));
     }
     
     @Override
@@ -33,17 +82,46 @@ public class KillerSudoku extends Sudoku {
         if(!super.isComplete())
             return false;
         
-        for(Area area : areas) {
-            int sum = 0;
-            for(int idx : area.getIndices())
-                sum += get(idx);
-            if( sum != area.getSum() )
+        for(int a = 0; a < areaList.length; ++a)
+            if( areaSums[a] != areaList[a].getSum() )
                 return false;
-        }
         
         return true;
     }
     
+    //Also when some area exceeds its sum or is full with a different one
+    @Override
+    public boolean hasConflicts() {
+        return super.hasConflicts() || badAreas > 0;
+    }
+    
+    //Also when its area exceeds its sum or is full with a different one
+    @Override
+    public boolean isInConflict(int i) {
+        if( super.isInConflict(i) )
+            return true;
+        if( isCellEmpty(get(i)) || areaOf[i] == -1 )
+            return false;
+        if( isBadArea(areaOf[i]) )
+            return true;
+        if( moreAreasOf[i] != null )
+            for(int a : moreAreasOf[i])
+                if( isBadArea(a) )
+                    return true;
+        return false;
+    }
+    
+    /**
+     * Checks if an area breaks its sum
+     *
+     * @param a The area
+     *
+     * @return true if the values exceed the sum, or fill the area with a different sum
+     */
+    private boolean isBadArea(int a) {
+        return areaSums[a] > areaList[a].getSum() || (areaEmpty[a] == 0 && areaSums[a] != areaList[a].getSum());
+    }
+    
     @Override
     public boolean canPlace(int i, int j, int v) {
         return canPlaceInArea(i, j, v) && super.canPlace(i, j, v); // Check also if can place in area
@@ -59,34 +137,134 @@ public class KillerSudoku extends Sudoku {
      * @return true if the value can be placed on the selected area, false otherwise
      */
     private boolean canPlaceInArea(int i, int j, int v) {
-        int idx = asRawIndex(i, j);
+        int a = areaOf[asRawIndex(i, j)];   // The area that has the index
         
-        Area selected = null; // Find area that has the index
-        for(Area area : areas) {
-            if( area.getIndices().contains(idx) ) {
-                selected = area;
-                break;
-            }
-        }
-        
-        if( selected == null ) // If no area the cant place in any area
+        if( a == -1 ) // If no area the cant place in any area
             return false;
         
-        int sum = 0;    // Sum of all values in the area
-        int empty = 0;  // Number of empty cells in the area
-        for( int index : selected.getIndices() ) {
-            int c = get(index);
-            if( isCellEmpty(c) )
-                empty++;
-            else
-                sum += c;
-        }
-        
+        int sum = areaSums[a];      // Sum of all values in the area
+        int empty = areaEmpty[a];   // Number of empty cells in the area
         
         if( empty == 1 )    // If only one empty then the sum+v must equal the needed sum
-            return sum + v == selected.getSum();
+            return sum + v == areaList[a].getSum();
         else                // Else it must be lower than the sum
-            return sum + v < selected.getSum();
+            return sum + v < areaList[a].getSum();
+    }
+    
+    //Keeps the sums of the areas
+    @Override
+    protected void onCellChanged(int i, int old) {
+        if( areaOf[i] == -1 )
+            return;
+        updateArea(areaOf[i], get(i), old);
+        if( moreAreasOf[i] != null )
+            for(int a : moreAreasOf[i])
+                updateArea(a, get(i), old);
+    }
+    
+    /**
+     * Updates the sum of an area after one of its cells changed
+     *
+     * @param a     The area
+     * @param v     The new value of the cell
+     * @param old   The old value of the cell
+     */
+    private void updateArea(int a, int v, int old) {
+        boolean wasBad = isBadArea(a);
+        areaSums[a] += v - old;
+        if( isCellEmpty(old) != isCellEmpty(v) )
+            areaEmpty[a] += isCellEmpty(v) ? 1 : -1;
+        areaCandidatesValid[a] = false;
+        if( wasBad != isBadArea(a) )
+            badAreas += wasBad ? -1 : 1;
+    }
+    
+    /**
+     * Returns the candidates of a cell, narrowed to the values that complete the sum of its area with distinct
+     * values
+     *
+     * @param i The raw index of the cell
+     *
+     * @return the candidates, bit v - 1 for value v, none if the cell is filled or in no area
+     */
+    @Override
+    public long getCandidates(int i) {
+        long candidates = super.getCandidates(i);
+        int a = areaOf[i];
+        if( candidates == 0 || a == -1 )
+            return 0;
+        if( !areaCandidatesValid[a] ) {
+            areaCandidates[a] = areaCandidates(a);
+            areaCandidatesValid[a] = true;
+        }
+        return candidates & areaCandidates[a];
+    }
+    
+    /**
+     * Finds the values that appear in some set of distinct unused values filling the empty cells of an area
+     *
+     * @param a The area
+     *
+     * @return the values, bit v - 1 for value v
+     */
+    private long areaCandidates(int a) {
+        Area area = areaList[a];
+        long available = -1L >>> (64 - getBoardDimension());
+        for(int k = 0; k < area.getCellCount(); ++k)
+            if( !isCellEmpty(get(area.getCell(k))) )
+                available &= ~(1L << (get(area.getCell(k)) - 1));
+        return combinations(available, areaEmpty[a], area.getSum() - areaSums[a]);
+    }
+    
+    /**
+     * Finds the values that appear in some set of n distinct available values with the given sum
+     *
+     * @param available The available values, bit v - 1 for value v
+     * @param n         The size of the sets
+     * @param sum       The sum of the sets
+     *
+     * @return the values, bit v - 1 for value v
+     */
+    static long combinations(long available, int n, int sum) {
+        if( n <= 0 || sum <= 0 )
+            return 0;
+        
+        //counts[k][s]: how many sets of k available values sum to s, for k < n
+        long[][] counts = new long[n][sum + 1];
+        counts[0][0] = 1;
+        for(long rest = available; rest != 0; rest &= rest - 1) {
+            int v = Long.numberOfTrailingZeros(rest) + 1;
+            for(int k = n - 1; k > 0; --k)
+                for(int s = sum; s >= v; --s)
+                    counts[k][s] += counts[k - 1][s - v];
+        }
+        
+        long result = 0;
+        for(long rest = available; rest != 0; rest &= rest - 1) {
+            int v = Long.numberOfTrailingZeros(rest) + 1;
+            //The sets of n - 1 values without v that sum to sum - v, removing v from the counts:
+            //without[k][s] = counts[k][s] - without[k - 1][s - v]
+            long ways = 0;
+            for(int t = 0, s = sum - v; t < n && s >= 0; ++t, s -= v)
+                ways += (t % 2 == 0 ? 1 : -1) * counts[n - 1 - t][s];
+            if( ways > 0 )
+                result |= 1L << (v - 1);
+        }
+        return result;
+    }
+    
+    /**
+     * Appends a value to an array
+     *
+     * @param array The array
+     * @param value The value
+     *
+     * @return a new array with the value at the end
+     */
+    private static int[] append(int[] array, int value) {
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
     }
     
     /**
@@ -104,8 +282,10 @@ public class KillerSudoku extends Sudoku {
         
         /** The expected sum of each value in this area */
         private final int sum;
-        /** The indices that comprise an area */
-        private final Set<Integer> indices;
+        /** The indices that comprise an area, sorted */
+        private final int[] cells;
+        /** The indices as a set, created on first use */
+        private Set<Integer> indices;
     
         /**
          * Constructs an area with the given sum and given indices
@@ -117,13 +297,43 @@ public class KillerSudoku extends Sudoku {
          * @throws NullPointerException if the indices is null
          */
         public Area(int sum, Set<Integer> indices) {
+            this(sum, toArray(indices));
+        }
+    
+        /**
+         * Constructs an area with the given sum and given cells
+         *
+         * @param sum   The sum of the area
+         * @param cells The distinct indices of the area (by reference, sorted in place)
+         *
+         * @throws IllegalArgumentException if the sum is not positive
+         * @throws NullPointerException if the cells is null
+         */
+        public Area(int sum, int[] cells) {
             if(sum <= 0)
                 throw new IllegalArgumentException("Sum is not positive");
-            if(indices == null)
-                throw new NullPointerException("Indices is null");
+            if(cells == null)
+                throw new NullPointerException("Cells is null");
             
+            Arrays.sort(cells);
             this.sum = sum;
-            this.indices = Collections.unmodifiableSet(indices);
+            this.cells = cells;
+        }
+    
+        /**
+         * Converts a set of indices to an array
+         * @param indices The indices
+         * @return the indices as an array
+         * @throws NullPointerException if the indices is null
+         */
+        private static int[] toArray(Set<Integer> indices) {
+            if(indices == null)
+                throw new NullPointerException("Indices is null");
+            int[] cells = new int[indices.size()];
+            int k = 0;
+            for(int idx : indices)
+                cells[k++] = idx;
+            return cells;
         }
     
         /**
@@ -139,9 +349,41 @@ public class KillerSudoku extends Sudoku {
          * @return the indices
          */
         public Set<Integer> getIndices() {
+            if(indices == null) {
+                Set<Integer> set = new HashSet<>();
+                for(int idx : cells)
+                    set.add(idx);
+                indices = Collections.unmodifiableSet(set);
+            }
             return indices;
         }
     
+        /**
+         * Returns the number of cells of the area
+         * @return the number of cells
+         */
+        public int getCellCount() {
+            return cells.length;
+        }
+    
+        /**
+         * Returns a cell of the area, without boxing
+         * @param k The position of the cell in the area, in [0, {@link #getCellCount()})
+         * @return the raw index of the k-th smallest cell of the area
+         */
+        public int getCell(int k) {
+            return cells[k];
+        }
+    
+        /**
+         * Checks if the area has a cell
+         * @param idx The raw index of the cell
+         * @return true if the cell belongs to the area, false otherwise
+         */
+        public boolean contains(int idx) {
+            return Arrays.binarySearch(cells, idx) >= 0;
+        }
+    
         /**
          * Checks if an area is equal to an other object
          *
@@ -165,8 +407,8 @@ public class KillerSudoku extends Sudoku {
         private boolean equals(Area other) {
             if(this == other)
                 return true;
-            for (int i : other.indices)
-                if (indices.contains(i))
+            for (int i : other.cells)
+                if (contains(i))
                     return true;
             return false;
         }
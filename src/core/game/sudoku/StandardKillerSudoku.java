@@ -19,4 +19,11 @@ public class StandardKillerSudoku extends KillerSudoku {
     public StandardKillerSudoku(String name, User user, Set<Area> areas) {
         super(name, user, areas, BOARD_DIMENSION_SIZE, BOX_DIMENSION_SIZE);
     }
+    
+    @Override
+    public Snapshot snapshot() {
+        String name = getName();
+        Set<Area> areas = getAreas();
+        return new Snapshot(this, owner -> new StandardKillerSudoku(name, owner, areas));
+    }
 }
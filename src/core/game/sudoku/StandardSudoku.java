@@ -17,4 +17,11 @@ public class StandardSudoku extends Sudoku {
     public StandardSudoku(String name, User user, int[] board) {
         super(name, user, board, BOARD_DIMENSION_SIZE, BOX_DIMENSION_SIZE);
     }
+    
+    @Override
+    public Snapshot snapshot() {
+        String name = getName();
+        int cells = getBoardDimension()*getBoardDimension();
+        return new Snapshot(this, owner -> new StandardSudoku(name, owner, new int[cells]));
+    }
 }
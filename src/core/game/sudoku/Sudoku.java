@@ -2,24 +2,65 @@ package core.game.sudoku;
 
 import core.game.User;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
 /**
  * A generic Sudoku implementation
+ * <br>
+ * A game is changed by one thread at a time. Other threads read it through {@link #getSnapshot()}: once it has been
+ * called, every batch of changes ends by publishing an immutable, versioned {@link Snapshot} through an atomic
+ * reference, so a reader gets a consistent board without locking and without waiting for the writer. Games nobody
+ * reads this way publish nothing.
  */
 public class Sudoku {
     
     /** A cell with that value is considered empty */
     public static final int EMPTY_VALUE = 0;
+    /** The largest board dimension with candidates, one bit per value in a long */
+    public static final int MAX_CANDIDATE_DIMENSION = 64;
     
     /** The name of the sudoku game */
     private final String name;
     /** The user playing the game */
     private final User user;
     /** The board of the game */
-    private final int[] board;
+    private final BoardStorage board;
     /** The dimensions of the board */
     private final int boardDimension;
     /** The dimensions of the box */
     private final int boxDimension;
+    /** The number of boxes per row of boxes */
+    private final int boxesPerRow;
+    /** How many times each value appears in each unit: rows, then columns, then boxes, d + 1 entries per unit */
+    private final int[] unitCounts;
+    /** The values present in each unit, bit v - 1 for value v (null if the board is too large) */
+    private final long[] unitMasks;
+    /** The candidates of each cell: the values its units miss, none for a filled cell (null if the board is too large) */
+    private final long[] candidates;
+    /** The number of filled cells */
+    private int filled = 0;
+    /** The number of values that appear more than once in a unit, over all units */
+    private int conflicts = 0;
+    /** The listeners of the game, which may be added and removed on other threads */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /** The depth of the open batches */
+    private int batchDepth = 0;
+    /** The cells changed in the current batch and their values before it */
+    private int[] touched = new int[0], before = new int[0];
+    private int touchedCount = 0;
+    /** Marks the cells in {@link #touched} */
+    private boolean[] isTouched = null;
+    /** Whether the game was completed in the current batch */
+    private boolean completedInBatch = false;
+    /** Incremented on every change of a cell */
+    private long version = 0;
+    /** The snapshot of the last batch, for the readers on other threads */
+    private final AtomicReference<Snapshot> published = new AtomicReference<>();
     
     /**
      * Constructs a new {@link Sudoku} game
@@ -35,6 +76,24 @@ public class Sudoku {
      * @throws IllegalArgumentException if the prefixed values of the board are not valid
      */
     public Sudoku(String name, User user, int[] board, int boardDimension, int boxDimension) {
+        this(name, user, board != null ? BoardStorage.wrap(board) : null, boardDimension, boxDimension);
+    }
+    
+    /**
+     * Constructs a new {@link Sudoku} game on a given storage, such as a compact one from
+     * {@link BoardStorage#of(int, int)}
+     *
+     * @param name              The name of the board   (by reference)
+     * @param user              The user playing        (by reference)
+     * @param board             The board of the game   (by reference)
+     * @param boardDimension    The board dimension     (by reference)
+     * @param boxDimension      The box dimension       (by reference)
+     *
+     * @throws NullPointerException if the name, user or board is null
+     * @throws IllegalArgumentException if the board or box size is negative or the boxes do not evenly divide the board
+     * @throws IllegalArgumentException if the storage cannot hold the values or the prefixed values are not valid
+     */
+    public Sudoku(String name, User user, BoardStorage board, int boardDimension, int boxDimension) {
         //Assign the values to the object by reference
         this.name           = name;
         this.user           = user;
@@ -58,15 +117,96 @@ public class Sudoku {
         if( boxDimension < 0 )
             throw new IllegalArgumentException("Box size is negative");
         
-        if (board.length != boardDimension * boardDimension )
+        if (board.size() != boardDimension * boardDimension )
             throw new IllegalArgumentException("Board is not a square");
         
+        if( board.maxValue() < boardDimension )
+            throw new IllegalArgumentException("Board cannot hold the values");
+        
         if( boardDimension % boxDimension != 0 )
             throw new IllegalArgumentException("Board cannot be evenly divided by the boxes");
         
-        for(int cell : board)
-            if( !isCellValid(cell) )
+        for(int i = 0; i < board.size(); ++i)
+            if( !isCellValid(board.get(i)) )
                 throw new IllegalArgumentException("Board cells are not all valid");
+        
+        //Count the prefixed values per unit and derive the candidates
+        boxesPerRow = boardDimension / boxDimension;
+        int units   = 2*boardDimension + boxesPerRow*boxesPerRow;
+        unitCounts  = new int[units * (boardDimension + 1)];
+        boolean masks = boardDimension <= MAX_CANDIDATE_DIMENSION;
+        unitMasks   = masks ? new long[units] : null;
+        candidates  = masks ? new long[board.size()] : null;
+        for(int i = 0; i < board.size(); ++i)
+            if( !isCellEmpty(board.get(i)) )
+                count(i, board.get(i), 1);
+        if( masks )
+            for(int i = 0; i < board.size(); ++i)
+                candidates[i] = computeCandidates(i);
+    }
+    
+    /**
+     * Creates a copy of the game, with the same rules and cells.
+     * <br>
+     * The copy is played by a detached user with the same name, so that solving or playing the copy does not
+     * change the stats of the real user.
+     *
+     * @return the copy
+     */
+    public Sudoku copy() {
+        return new Sudoku(name, new User(user.getName()), board.copy(), boardDimension, boxDimension);
+    }
+    
+    /**
+     * Creates a compact snapshot of the game: its rules and the values of its cells, without the user, the
+     * listeners or the derived counters and candidates, which are rebuilt on {@link Snapshot#restore(User)}.
+     * <br>
+     * The snapshot does not reference the game, so an evicted game can be collected. A subclass overrides this to
+     * restore its own class and state, building the factory from locals only.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        String name = this.name;
+        int cells = board.size(), maxValue = board.maxValue(), d = boardDimension, b = boxDimension;
+        return new Snapshot(this, owner -> new Sudoku(name, owner, BoardStorage.of(cells, maxValue), d, b));
+    }
+    
+    /**
+     * Returns the snapshot published by the last batch of changes, with the candidates and the conflicts of the
+     * cells. Lock free and safe on any thread.
+     * <br>
+     * The first snapshot is taken on the first call if no batch has ended yet, so it must be called before the game
+     * is handed to a writer on another thread.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = published.get();
+        if( snapshot == null ) {
+            published.compareAndSet(null, new Snapshot(snapshot(), this));
+            snapshot = published.get();
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Copies the cells of an other game of the same size, bypassing the rules
+     *
+     * @param other The game to copy the cells from
+     *
+     * @throws IllegalArgumentException if the boards differ in size
+     */
+    protected void copyCells(Sudoku other) {
+        if(other.board.size() != board.size())
+            throw new IllegalArgumentException("Boards differ in size");
+        beginBatch();
+        try {
+            for(int i = 0; i < board.size(); ++i)
+                set(i, other.board.get(i));
+        } finally {
+            endBatch();
+        }
     }
     
     /**
@@ -146,7 +286,38 @@ public class Sudoku {
      * @return the selected cell
      */
     public int get(int i) {
-        return board[i];
+        return board.get(i);
+    }
+    
+    /**
+     * Finds the first empty cell, scanning the storage in bulk
+     *
+     * @param from The raw index of the first cell to look at
+     *
+     * @return the raw index of the cell, -1 if all the cells from there are filled
+     */
+    public int findEmptyCell(int from) {
+        return board.indexOf(EMPTY_VALUE, from);
+    }
+    
+    /**
+     * Copies the cells in bulk, in the layout of the game
+     *
+     * @return a copy of the storage of the board
+     */
+    public BoardStorage copyBoard() {
+        return board.copy();
+    }
+    
+    /**
+     * Checks if an other game has the same values in all its cells, comparing the boards in bulk
+     *
+     * @param other The other game
+     *
+     * @return true if the boards have the same size and values, false otherwise
+     */
+    public boolean hasSameCells(Sudoku other) {
+        return board.contentEquals(other.board);
     }
     
     /**
@@ -173,7 +344,12 @@ public class Sudoku {
      * @throws IndexOutOfBoundsException if i exceeds the limits of the array
      */
     public void reset(int i) {
-        board[i] = EMPTY_VALUE;
+        beginBatch();
+        try {
+            set(i, EMPTY_VALUE);
+        } finally {
+            endBatch();
+        }
     }
     
     /**
@@ -205,10 +381,17 @@ public class Sudoku {
         if( !canPlace(i, v) )
             return false;
     
-        board[i] = v;
+        beginBatch();
+        try {
+            set(i, v);
     
-        if(isComplete())
-            onComplete();
+            if(isComplete()) {
+                completedInBatch = true;
+                onComplete();
+            }
+        } finally {
+            endBatch();
+        }
     
         return true;
     }
@@ -247,15 +430,20 @@ public class Sudoku {
         if (isCellEmpty(old))
             return place(i, v);
         
-        // Else reset
-        reset(i);
-        // Attempt to place new and return true on success
-        if( place(i, v) )
-            return true;
-        
-        // Place old and return false since replace failed
-        place(i, old);
-        return false;
+        beginBatch();   // Listeners see the final value only
+        try {
+            // Else reset
+            reset(i);
+            // Attempt to place new and return true on success
+            if( place(i, v) )
+                return true;
+            
+            // Place old and return false since replace failed
+            place(i, old);
+            return false;
+        } finally {
+            endBatch();
+        }
     }
     
     /**
@@ -319,10 +507,7 @@ public class Sudoku {
      * @return true if the value can be placed on the selected row, false otherwise
      */
     private boolean canPlaceOnRow(int j, int v) {
-        for(int i = 0; i < boardDimension; ++i) // For all columns on this row
-            if( get(i, j) == v )                // If any cell has the value v in it
-                return false;                   // The value cannot be placed on this row
-        return true;                            // Else it can
+        return unitCounts[j*(boardDimension + 1) + v] == 0;   // No cell of the row has the value v in it
     }
     
     /**
@@ -334,10 +519,7 @@ public class Sudoku {
      * @return true if the value can be placed on the selected column, false otherwise
      */
     private boolean canPlaceOnColumn(int i, int v) {
-        for(int j = 0; j < boardDimension; ++j) // For all rows on this column
-            if( get(i, j) == v )                // If any cell has the value v in it
-                return false;                   // The value cannot be placed on this column
-        return true;                            // Else it can
+        return unitCounts[(boardDimension + i)*(boardDimension + 1) + v] == 0;  // No cell of the column has v
     }
     
     /**
@@ -350,28 +532,307 @@ public class Sudoku {
      * @return true if the value can be placed on the selected box, false otherwise
      */
     private boolean canPlaceOnBox(int i, int j, int v) {
-        int bi = (i/boxDimension)*boxDimension;    // Leftmost column of the box
-        int bj = (j/boxDimension)*boxDimension;    // Upmost row of the box
-        
-        for(int lj = 0; lj < boxDimension; ++lj)    // For all rows of the box
-            for(int li = 0; li < boxDimension; ++li)// For all columns of the row
-                if( get(li+bi, lj+bj) == v)         // If any cell in the box has the value v
-                    return false;                   // The value cannot be placed in the box
-        return true;                                // Else it can
+        return unitCounts[boxUnit(i, j)*(boardDimension + 1) + v] == 0;     // No cell of the box has v
+    }
+    
+    /**
+     * Returns the unit of the box of a cell
+     *
+     * @param i The cell's column index
+     * @param j The cell's row index
+     *
+     * @return the unit of the box, after the rows and the columns
+     */
+    private int boxUnit(int i, int j) {
+        return 2*boardDimension + (j/boxDimension)*boxesPerRow + i/boxDimension;
     }
     
     /**
      * Checks if the board is complete
      *
-     * @return true if no cell is empty, false otherwise
+     * @return true if no cell is empty and no value repeats in a unit, false otherwise
      */
     public boolean isComplete() {
-        for(int i = 0; i < boardDimension*boardDimension; ++i)
-            if( isCellEmpty(get(i)) )
-                return false;
+        return filled == board.size() && conflicts == 0;
+    }
+    
+    /**
+     * Sets a cell to any value, ignoring the rules, so that conflicts are shown instead of refused ("free entry").
+     * <br>
+     * The game is complete only when it is full and has no conflicts.
+     *
+     * @param i The raw index of the cell
+     * @param v The value, or {@link #EMPTY_VALUE} to reset the cell
+     *
+     * @return true if the value was set, false if it is not a valid cell value
+     *
+     * @see #isInConflict(int)
+     */
+    public boolean enter(int i, int v) {
+        if( !isCellValid(v) )
+            return false;
+        
+        beginBatch();
+        try {
+            set(i, v);
+            
+            if(isComplete()) {
+                completedInBatch = true;
+                onComplete();
+            }
+        } finally {
+            endBatch();
+        }
+        
         return true;
     }
     
+    /**
+     * Checks if the board breaks a rule, in O(1)
+     *
+     * @return true if some cell is in conflict, false otherwise
+     */
+    public boolean hasConflicts() {
+        return conflicts > 0;
+    }
+    
+    /**
+     * Checks if a cell breaks a rule, in O(1): its value repeats in its row, column or box
+     *
+     * @param i The raw index of the cell
+     *
+     * @return true if the cell is filled and in conflict, false otherwise
+     */
+    public boolean isInConflict(int i) {
+        int v = board.get(i);
+        if( isCellEmpty(v) )
+            return false;
+        int ci = i%boardDimension, cj = i/boardDimension;
+        return unitCounts[cj*(boardDimension + 1) + v] > 1
+            || unitCounts[(boardDimension + ci)*(boardDimension + 1) + v] > 1
+            || unitCounts[boxUnit(ci, cj)*(boardDimension + 1) + v] > 1;
+    }
+    
+    /**
+     * Returns the candidates of a cell: the values that no cell of its row, column or box has.
+     * <br>
+     * The candidates are kept up to date on every change, updating only the cells that share a unit with the changed
+     * one. Variants may narrow them further.
+     *
+     * @param i The raw index of the cell
+     *
+     * @return the candidates, bit v - 1 for value v, none if the cell is filled
+     *
+     * @throws UnsupportedOperationException if the board dimension exceeds {@link #MAX_CANDIDATE_DIMENSION}
+     */
+    public long getCandidates(int i) {
+        if( candidates == null )
+            throw new UnsupportedOperationException("Candidates need a board dimension of at most " + MAX_CANDIDATE_DIMENSION);
+        return candidates[i];
+    }
+    
+    /**
+     * Checks if a value is a candidate of a cell
+     *
+     * @param i The raw index of the cell
+     * @param v The value
+     *
+     * @return true if the value is a candidate, false otherwise
+     *
+     * @throws UnsupportedOperationException if the board dimension exceeds {@link #MAX_CANDIDATE_DIMENSION}
+     * @see #getCandidates(int)
+     */
+    public final boolean isCandidate(int i, int v) {
+        return isValueValid(v) && (getCandidates(i) & 1L << (v - 1)) != 0;
+    }
+    
+    /**
+     * Computes the candidates of a cell from the units
+     *
+     * @param i The raw index of the cell
+     *
+     * @return the candidates of the cell
+     */
+    private long computeCandidates(int i) {
+        if( !isCellEmpty(board.get(i)) )
+            return 0;
+        int ci = i%boardDimension, cj = i/boardDimension;
+        long used = unitMasks[cj] | unitMasks[boardDimension + ci] | unitMasks[boxUnit(ci, cj)];
+        return ~used & (-1L >>> (64 - boardDimension));
+    }
+    
+    /**
+     * Counts a value in or out of the units of a cell
+     *
+     * @param i     The raw index of the cell
+     * @param v     The value
+     * @param delta 1 to count the value in, -1 to count it out
+     */
+    private void count(int i, int v, int delta) {
+        int ci = i%boardDimension, cj = i/boardDimension;
+        countInUnit(cj, v, delta);
+        countInUnit(boardDimension + ci, v, delta);
+        countInUnit(boxUnit(ci, cj), v, delta);
+        filled += delta;
+    }
+    
+    /**
+     * Counts a value in or out of a unit, keeping its mask
+     *
+     * @param unit  The unit
+     * @param v     The value
+     * @param delta 1 to count the value in, -1 to count it out
+     */
+    private void countInUnit(int unit, int v, int delta) {
+        int count = unitCounts[unit*(boardDimension + 1) + v] += delta;
+        if( count == (delta > 0 ? 2 : 1) )  // The value started or stopped repeating
+            conflicts += delta;
+        if( unitMasks != null ) {
+            if( count == 0 )
+                unitMasks[unit] &= ~(1L << (v - 1));
+            else
+                unitMasks[unit] |= 1L << (v - 1);
+        }
+    }
+    
+    /**
+     * Updates the candidates of a cell and of the cells sharing a unit with it
+     *
+     * @param i The raw index of the changed cell
+     */
+    private void updateCandidates(int i) {
+        int d = boardDimension;
+        int ci = i%d, cj = i/d;
+        for(int k = 0; k < d; ++k) {
+            candidates[k + cj*d] = computeCandidates(k + cj*d);   // The row
+            candidates[ci + k*d] = computeCandidates(ci + k*d);   // The column
+        }
+        int bi = (ci/boxDimension)*boxDimension, bj = (cj/boxDimension)*boxDimension;
+        for(int lj = bj; lj < bj + boxDimension; ++lj)            // The box
+            for(int li = bi; li < bi + boxDimension; ++li)
+                candidates[li + lj*d] = computeCandidates(li + lj*d);
+    }
+    
+    /**
+     * Called after a cell changed value, with the units and the candidates already updated. Does nothing by default.
+     *
+     * @param i     The raw index of the cell
+     * @param old   The old value of the cell
+     */
+    protected void onCellChanged(int i, int old) {
+    }
+    
+    /**
+     * Sets a cell, remembering its old value for the listeners
+     *
+     * @param i The raw index of the cell
+     * @param v The new value
+     */
+    private void set(int i, int v) {
+        int old = board.get(i);
+        if( !listeners.isEmpty() && old != v ) {
+            if( isTouched == null )
+                isTouched = new boolean[board.size()];
+            if( !isTouched[i] ) {
+                if( touchedCount == touched.length ) {
+                    touched = Arrays.copyOf(touched, Math.max(16, touchedCount*2));
+                    before  = Arrays.copyOf(before, touched.length);
+                }
+                isTouched[i] = true;
+                touched[touchedCount] = i;
+                before[touchedCount++] = old;
+            }
+        }
+        if( old == v )
+            return;
+        version++;
+        if( !isCellEmpty(old) )
+            count(i, old, -1);
+        board.set(i, v);
+        if( !isCellEmpty(v) )
+            count(i, v, 1);
+        if( candidates != null )
+            updateCandidates(i);
+        onCellChanged(i, old);
+    }
+    
+    /**
+     * Starts a batch of changes.
+     * <br>
+     * The listeners are notified once, when the outermost batch ends, of the cells whose value differs from the one
+     * they had when it started. Every change of the board is a batch of its own, so a solver that opens a batch
+     * around its search produces a single update however many cells it tries.
+     * Batches nest and each one must be ended by {@link #endBatch()}.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+    
+    /**
+     * Ends a batch of changes, notifying the listeners if it was the outermost one
+     *
+     * @throws IllegalStateException if there is no open batch
+     * @see #beginBatch()
+     */
+    public void endBatch() {
+        if( batchDepth == 0 )
+            throw new IllegalStateException("No batch to end");
+        if( --batchDepth > 0 )
+            return;
+        Snapshot last = published.get();                // Publish only once read, before telling the listeners
+        if( last != null && last.version != version )   // So that they read the new board
+            published.set(new Snapshot(snapshot(), this));
+        if( touchedCount == 0 && !completedInBatch )    // Nothing to tell
+            return;
+        
+        int changed = 0, emptied = 0;   // Split the net changes in placed and emptied cells
+        int[] placedCells = new int[touchedCount], resetCells = new int[touchedCount];
+        for(int k = 0; k < touchedCount; ++k) {
+            int i = touched[k];
+            isTouched[i] = false;
+            if( board.get(i) == before[k] )
+                continue;
+            if( isCellEmpty(board.get(i)) )
+                resetCells[emptied++] = i;
+            else
+                placedCells[changed++] = i;
+        }
+        touchedCount = 0;
+        boolean completed = completedInBatch && changed + emptied > 0 && isComplete();
+        completedInBatch = false;
+        
+        for(Listener listener : listeners) {
+            if( emptied > 0 )
+                listener.cellsReset(this, Arrays.copyOf(resetCells, emptied));
+            if( changed > 0 )
+                listener.cellsChanged(this, Arrays.copyOf(placedCells, changed));
+            if( completed )
+                listener.completed(this);
+        }
+    }
+    
+    /**
+     * Adds a listener
+     *
+     * @param listener The listener
+     *
+     * @throws NullPointerException if the listener is null
+     */
+    public void addListener(Listener listener) {
+        if( listener == null )
+            throw new NullPointerException("Listener is null");
+        listeners.add(listener);
+    }
+    
+    /**
+     * Removes a listener
+     *
+     * @param listener The listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
     /**
      * Procedure to be executed on completion
      */
@@ -410,4 +871,180 @@ public class Sudoku {
     public User getUser() {
         return user;
     }
+    
+    /**
+     * An immutable snapshot of a game, a few bytes per board: the values are packed in 4 bits per cell on boards up to
+     * 15x15 and in a byte per cell up to 255x255.
+     * <br>
+     * The snapshots published for the readers ({@link #getSnapshot()}) also hold the candidates and the conflicts of
+     * the cells; the ones of {@link #snapshot()} hold only the values, to be compact.
+     */
+    public static final class Snapshot {
+        
+        /** Creates an empty game with the same rules for a user */
+        private final Function<User, ? extends Sudoku> factory;
+        /** The class of the game */
+        private final Class<? extends Sudoku> type;
+        /** The number of cells */
+        private final int cells;
+        /** The values, in the smallest layout for the board dimension */
+        private final BoardStorage values;
+        /** The version of the game */
+        private final long version;
+        /** Whether the game was complete */
+        private final boolean complete;
+        /** The candidates of each cell (null if not held or the board is too large) */
+        private final long[] candidates;
+        /** The cells in conflict, bit i%64 of word i/64 (null if not held) */
+        private final long[] conflicts;
+        
+        /**
+         * Packs the cells of a game
+         *
+         * @param game      The game
+         * @param factory   Creates an empty game of the same class and rules for a user, without referencing the game
+         */
+        Snapshot(Sudoku game, Function<User, ? extends Sudoku> factory) {
+            this.factory = factory;
+            type     = game.getClass();
+            cells    = game.board.size();
+            values   = BoardStorage.of(cells, game.boardDimension);
+            values.copyFrom(game.board);
+            version  = game.version;
+            complete = game.isComplete();
+            candidates = conflicts = null;
+        }
+        
+        /**
+         * Adds the candidates and the conflicts of the cells to a snapshot of the values
+         *
+         * @param values    The snapshot of the values, whose arrays are shared
+         * @param game      The game, unchanged since
+         */
+        private Snapshot(Snapshot values, Sudoku game) {
+            factory     = values.factory;
+            type        = values.type;
+            cells       = values.cells;
+            this.values = values.values;
+            version     = values.version;
+            complete    = values.complete;
+            candidates  = game.candidates != null ? new long[cells] : null;
+            conflicts   = new long[(cells + 63)/64];
+            for(int i = 0; i < cells; ++i) {
+                if( candidates != null )
+                    candidates[i] = game.getCandidates(i);
+                if( game.isInConflict(i) )
+                    conflicts[i >> 6] |= 1L << i;
+            }
+        }
+        
+        /**
+         * Getter for the version
+         *
+         * @return the number of changes of the cells of the game when the snapshot was taken
+         */
+        public long getVersion() {
+            return version;
+        }
+        
+        /**
+         * Checks if the game was complete
+         *
+         * @return true if the game was complete when the snapshot was taken
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+        
+        /**
+         * Returns the candidates of a cell
+         *
+         * @param i The raw index of the cell
+         *
+         * @return the candidates, as by {@link Sudoku#getCandidates(int)}
+         *
+         * @throws UnsupportedOperationException if the snapshot holds no candidates
+         */
+        public long getCandidates(int i) {
+            if( candidates == null )
+                throw new UnsupportedOperationException("Snapshot holds no candidates");
+            return candidates[i];
+        }
+        
+        /**
+         * Checks if a cell was in conflict
+         *
+         * @param i The raw index of the cell
+         *
+         * @return true if the cell was in conflict, as by {@link Sudoku#isInConflict(int)}
+         *
+         * @throws UnsupportedOperationException if the snapshot holds no conflicts
+         */
+        public boolean isInConflict(int i) {
+            if( conflicts == null )
+                throw new UnsupportedOperationException("Snapshot holds no conflicts");
+            return (conflicts[i >> 6] & 1L << i) != 0;
+        }
+        
+        /**
+         * Returns the value of a cell
+         *
+         * @param i The raw index of the cell
+         *
+         * @return the value
+         */
+        public int get(int i) {
+            return values.get(i);
+        }
+        
+        /**
+         * Recreates the game
+         *
+         * @param user The user playing the game
+         *
+         * @return a new game with the class, the rules and the cells of the snapshot
+         *
+         * @throws IllegalStateException if the game comes back as an other class, as when a subclass does not
+         *                               override {@link Sudoku#snapshot()}
+         */
+        public Sudoku restore(User user) {
+            Sudoku game = factory.apply(user);
+            if( game.getClass() != type )
+                throw new IllegalStateException("Snapshot of a " + type.getSimpleName() + " restored as a "
+                                                + game.getClass().getSimpleName());
+            for(int i = 0; i < cells; ++i)
+                game.set(i, get(i));
+            return game;
+        }
+    }
+    
+    /**
+     * A listener of the changes of a game.
+     * <br>
+     * It is called on the thread that changed the game, once per batch (see {@link #beginBatch()}).
+     */
+    public interface Listener {
+        /**
+         * Called when cells got a new value
+         *
+         * @param game  The game
+         * @param cells The raw indices of the cells
+         */
+        void cellsChanged(Sudoku game, int[] cells);
+        
+        /**
+         * Called when cells were emptied
+         *
+         * @param game  The game
+         * @param cells The raw indices of the cells
+         */
+        void cellsReset(Sudoku game, int[] cells);
+        
+        /**
+         * Called when the game was completed, after the changes of the cells
+         *
+         * @param game The game
+         */
+        void completed(Sudoku game);
+    }
 }
@@ -0,0 +1,132 @@
+package core.gui;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+
+/**
+ * A zoomable, scrollable view of a board.
+ * <br>
+ * The board is centered while it is smaller than the view. The viewport blits on scroll and the board paints only
+ * the cells in its clip, so a scroll paints just the newly exposed strip of cells whatever the size of the board.
+ * Ctrl + mouse wheel zooms around the cursor.
+ */
+public class GUIBoardView extends JScrollPane {
+
+    //The zoom factor of one step
+    private static final double ZOOM_STEP = 1.25;
+
+    //The board
+    private final GUISudokuBoard board;
+
+    /**
+     * Constructs the view, zooming the board out if it does not fit
+     * @param board The board
+     * @param size  The size of the view
+     */
+    public GUIBoardView(GUISudokuBoard board, Dimension size) {
+        if(board == null)
+            throw new NullPointerException("Board is null");
+        this.board = board;
+
+        JPanel center = new JPanel(new GridBagLayout());    //Centers the board
+        center.add(board);
+        setViewportView(center);
+        getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
+        setBorder(BorderFactory.createEmptyBorder());
+        setSize(size);
+
+        board.setCellSize(Math.min(board.getCellSize(), fitCellSize()));
+        updateIncrements();
+    }
+
+    /**
+     * Getter for the board
+     * @return the board
+     */
+    public GUISudokuBoard getBoard() {
+        return board;
+    }
+
+    /** Zooms in one step, around the center of the view */
+    public void zoomIn() {
+        zoom((int) Math.ceil(board.getCellSize() * ZOOM_STEP), center());
+    }
+
+    /** Zooms out one step, around the center of the view */
+    public void zoomOut() {
+        zoom((int) (board.getCellSize() / ZOOM_STEP), center());
+    }
+
+    /** Zooms so that the whole board fits in the view */
+    public void fit() {
+        zoom(fitCellSize(), center());
+    }
+
+    //Zooms on ctrl + wheel, scrolls otherwise
+    @Override
+    protected void processMouseWheelEvent(MouseWheelEvent e) {
+        if(!e.isControlDown()) {
+            super.processMouseWheelEvent(e);
+            return;
+        }
+        Point at = SwingUtilities.convertPoint(this, e.getPoint(), getViewport());
+        int size = board.getCellSize();
+        zoom(e.getWheelRotation() < 0 ? (int) Math.ceil(size * ZOOM_STEP) : (int) (size / ZOOM_STEP), at);
+        e.consume();
+    }
+
+    /**
+     * Changes the cell size, keeping the point of the board under a point of the viewport in place
+     * @param size  The new cell size
+     * @param at    The point in viewport coordinates
+     */
+    private void zoom(int size, Point at) {
+        int old = board.getCellSize();
+        JViewport viewport = getViewport();
+        Point view = viewport.getViewPosition();
+        //The point of the board under the anchor, in cells
+        double x = (view.x + at.x - board.getX()) / (double) old;
+        double y = (view.y + at.y - board.getY()) / (double) old;
+
+        board.setCellSize(size);
+        if(board.getCellSize() == old)
+            return;
+        validate();     //Lay out the new size now, to scroll within it
+        updateIncrements();
+
+        Dimension extent = viewport.getExtentSize(), whole = viewport.getViewSize();
+        int vx = (int) Math.round(x*board.getCellSize()) + board.getX() - at.x;
+        int vy = (int) Math.round(y*board.getCellSize()) + board.getY() - at.y;
+        viewport.setViewPosition(new Point(
+                Math.max(0, Math.min(vx, whole.width - extent.width)),
+                Math.max(0, Math.min(vy, whole.height - extent.height))));
+    }
+
+    /**
+     * Returns the center of the viewport
+     * @return the center in viewport coordinates
+     */
+    private Point center() {
+        Dimension extent = getViewport().getExtentSize();
+        return new Point(extent.width/2, extent.height/2);
+    }
+
+    /**
+     * Finds the largest cell size that fits the board in the view
+     * @return the cell size
+     */
+    private int fitCellSize() {
+        Insets insets = getInsets();
+        int side = Math.min(getWidth() - insets.left - insets.right, getHeight() - insets.top - insets.bottom);
+        return side / board.getGame().getBoardDimension();
+    }
+
+    /** Scrolls by one cell per unit and by the view per block */
+    private void updateIncrements() {
+        getHorizontalScrollBar().setUnitIncrement(board.getCellSize());
+        getVerticalScrollBar().setUnitIncrement(board.getCellSize());
+        getHorizontalScrollBar().setBlockIncrement(getWidth() - board.getCellSize());
+        getVerticalScrollBar().setBlockIncrement(getHeight() - board.getCellSize());
+    }
+}
@@ -3,15 +3,36 @@ package core.gui;
 import core.game.sudoku.KillerSudoku;
 import core.game.sudoku.Sudoku;
 
-import javax.swing.*;
 import java.awt.*;
-import java.util.Set;
+import java.util.Arrays;
 
-/** A GUI panel to handle the killer sudoku game */
+/**
+ * A GUI panel to handle the killer sudoku game.
+ * <br>
+ * The cages never change during a game, so their colors, dashed outlines and sums are laid out once and painted into
+ * the layer under the values.
+ */
 public class GUIKillerSudokuBoard extends GUISudokuBoard {
     
+    //The font of the cage sums, at the default cell size
+    private static final Font SUM_FONT = new Font("SansSerif", Font.PLAIN, 11);
+    //The distance of the cage outlines from the cell edges, at the default cell size
+    private static final int INSET = 4;
+    //The dashed cage outline
+    private static final Stroke OUTLINE = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10,
+            new float[] {4, 3}, 0);
+    
     //The game
     private final KillerSudoku game;
+    //The cage of each cell, -1 for none
+    private final int[] cageOf;
+    //The background and outline color of each cage
+    private final Color[] backgrounds, foregrounds;
+    //The sum of each cage and the cell its label is drawn in
+    private final String[] sums;
+    private final int[] labelCells;
+    //The bounds of each cage, in cells
+    private final Rectangle[] bounds;
     
     /**
      * Constructs the object
@@ -24,38 +45,122 @@ public class GUIKillerSudokuBoard extends GUISudokuBoard {
         if( !(game instanceof KillerSudoku) )
             throw new IllegalArgumentException("Game is not killer sudoku");
         this.game = (KillerSudoku)game;
+        
+        int d = game.getBoardDimension();
+        int cages = this.game.getAreas().size();
+        cageOf      = new int[d*d];
+        backgrounds = new Color[cages];
+        foregrounds = new Color[cages];
+        sums        = new String[cages];
+        labelCells  = new int[cages];
+        bounds      = new Rectangle[cages];
+        Arrays.fill(cageOf, -1);
+        
+        int c = 0;
+        for(KillerSudoku.Area area : this.game.getAreas()) {    //Lay out each cage once
+            labelCells[c]  = area.getCell(0);   //Cells are sorted, the first is the upper left corner
+            float h = labelCells[c] / 20.f;
+            backgrounds[c] = Color.getHSBColor(h, .5f, 1);
+            foregrounds[c] = Color.getHSBColor(h, 1, .5f);
+            sums[c]        = Integer.toString(area.getSum());
+            for(int k = 0; k < area.getCellCount(); ++k) {
+                int idx = area.getCell(k);
+                cageOf[idx] = c;
+                if(bounds[c] == null)
+                    bounds[c] = new Rectangle(idx % d, idx / d, 1, 1);
+                else
+                    bounds[c].add(new Rectangle(idx % d, idx / d, 1, 1));
+            }
+            c++;
+        }
     }
     
+    //The candidates depend on the cage too
     @Override
-    public void updateUI() {
-        super.updateUI();
-        if(game != null) {
-            for(KillerSudoku.Area area : game.getAreas()) { //For each area set color and text
-            
-                Set<Integer> indices = area.getIndices();
-                int idx = Integer.MAX_VALUE;    //Find min = Upper left corner of area
-                for( int index : indices )
-                    if( index < idx )
-                        idx = index;
-            
-                float h = idx / 20.f;
-            
-                Color backgroundColor = Color.getHSBColor(h, .5f, 1);
-                Color foregoundColor  = Color.getHSBColor(h, 1, .5f);
+    protected void repaintPeers(int idx) {
+        super.repaintPeers(idx);
+        if(cageOf[idx] != -1) {
+            Rectangle cage = bounds[cageOf[idx]];
+            int size = getCellSize();
+            repaint(cage.x*size, cage.y*size, cage.width*size, cage.height*size);
+        }
+    }
+    
+    //Fills each cage with its color
+    @Override
+    protected void paintCellBackgrounds(Graphics2D g) {
+        super.paintCellBackgrounds(g);
+        for(int idx = 0; idx < cageOf.length; ++idx) {
+            if(cageOf[idx] == -1)
+                continue;
+            g.setColor(backgrounds[cageOf[idx]]);
+            g.fillRect(column(idx)*getCellSize(), row(idx)*getCellSize(), getCellSize(), getCellSize());
+        }
+    }
+    
+    //Draws the dashed outline and the sum of each cage over the lines, if the cells are large enough
+    @Override
+    protected void paintLayer(Graphics2D g) {
+        super.paintLayer(g);
+        if(!isDetailed())
+            return;
+        
+        int d = game.getBoardDimension();
+        int size = getCellSize();
+        int inset = Math.max(2, INSET*size / CELL_SIZE.width);
+        g.setStroke(OUTLINE);
+        for(int idx = 0; idx < cageOf.length; ++idx) {
+            int c = cageOf[idx];
+            if(c == -1)
+                continue;
+            int i = column(idx), j = row(idx);
+            boolean up    = j > 0     && cageOf[idx - d] == c;  //The neighbours in the same cage
+            boolean down  = j < d - 1 && cageOf[idx + d] == c;
+            boolean left  = i > 0     && cageOf[idx - 1] == c;
+            boolean right = i < d - 1 && cageOf[idx + 1] == c;
             
-                for(int i : area.getIndices()) {
-                    int v = game.get(i);
-                    JButton cell = (JButton) getComponent(i);
-                    cell.setBackground(backgroundColor);
-                
-                    if(v != 0) {
-                        cell.setForeground(Color.BLACK);
-                    } else {
-                        cell.setForeground(foregoundColor);
-                        cell.setText(Integer.toString(area.getSum()));
-                    }
-                }
-            }
+            //The outline runs inset inside the cage, up to the neighbours in the same cage
+            int x0 = i*size, x1 = x0 + size - 1;
+            int y0 = j*size, y1 = y0 + size - 1;
+            int l = left ? x0 : x0 + inset, r = right ? x1 : x1 - inset;
+            int t = up ? y0 : y0 + inset, b = down ? y1 : y1 - inset;
+            g.setColor(foregrounds[c]);
+            if(!up)
+                g.drawLine(l, y0 + inset, r, y0 + inset);
+            if(!down)
+                g.drawLine(l, y1 - inset, r, y1 - inset);
+            if(!left)
+                g.drawLine(x0 + inset, t, x0 + inset, b);
+            if(!right)
+                g.drawLine(x1 - inset, t, x1 - inset, b);
         }
+        
+        g.setFont(SUM_FONT.deriveFont(Math.max(8f, SUM_FONT.getSize2D()*size / CELL_SIZE.width)));
+        int ascent = g.getFontMetrics().getAscent();
+        for(int c = 0; c < sums.length; ++c) {
+            int x = column(labelCells[c])*size + inset + 2, y = row(labelCells[c])*size + inset;
+            g.setColor(backgrounds[c]);     //Cut the outline under the label
+            g.fillRect(x - 1, y - 1, g.getFontMetrics().stringWidth(sums[c]) + 2, ascent + 1);
+            g.setColor(foregrounds[c]);
+            g.drawString(sums[c], x, y + ascent - 1);
+        }
+    }
+    
+    /**
+     * Returns the column of a cell
+     * @param idx The row major index of the cell
+     * @return the column
+     */
+    private int column(int idx) {
+        return idx % game.getBoardDimension();
+    }
+    
+    /**
+     * Returns the row of a cell
+     * @param idx The row major index of the cell
+     * @return the row
+     */
+    private int row(int idx) {
+        return idx / game.getBoardDimension();
     }
 }
@@ -1,174 +1,482 @@
 package core.gui;
 
 import core.LanguageSettings;
+import core.game.solvers.Hint;
 import core.game.sudoku.Sudoku;
 
 import javax.swing.*;
-import javax.swing.border.Border;
 import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.util.List;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * A JPanel for the sudoku game.
+ * <br>
+ * The whole board is painted by the panel itself: what never changes during a game (backgrounds and lines) is painted
+ * once into an image layer, the glyphs of the values are laid out once and drawn over it, a click is mapped to its
+ * cell arithmetically and only the cells reported changed by the game are repainted.
+ * <br>
+ * The board can be zoomed. Only the cells in the clip are painted, so inside a {@link GUIBoardView} only the visible
+ * ones are, and small cells are painted with less detail: colored marks instead of values.
+ * <br>
+ * The board paints the last published {@link Sudoku.Snapshot} of the game, never the game itself, so a solver may
+ * change the game on another thread while it is shown. Input is ignored while the board is disabled.
+ */
+public class GUISudokuBoard extends JPanel implements Sudoku.Listener {
 
-/** A JPanel for the sudoku game */
-public class GUISudokuBoard extends JPanel {
-    
     //CellSize
     protected static final Dimension CELL_SIZE = new Dimension(50, 50);
-    
-    //Borders
-    private static final Border UL_BORDER = BorderFactory.createMatteBorder(2, 2, 1, 1, Color.BLACK);
-    private static final Border U_BORDER  = BorderFactory.createMatteBorder(2, 1, 1, 1, Color.BLACK);
-    private static final Border UR_BORDER = BorderFactory.createMatteBorder(2, 1, 1, 2, Color.BLACK);
-    private static final Border R_BORDER  = BorderFactory.createMatteBorder(1, 1, 1, 2, Color.BLACK);
-    private static final Border DR_BORDER = BorderFactory.createMatteBorder(1, 1, 2, 2, Color.BLACK);
-    private static final Border D_BORDER  = BorderFactory.createMatteBorder(1, 1, 2, 1, Color.BLACK);
-    private static final Border DL_BORDER = BorderFactory.createMatteBorder(1, 2, 2, 1, Color.BLACK);
-    private static final Border L_BORDER  = BorderFactory.createMatteBorder(1, 2, 1, 1, Color.BLACK);
-    private static final Border M_BORDER  = BorderFactory.createMatteBorder(1, 1, 1, 1, Color.BLACK);
-    
+    //The smallest and largest cell sizes, and the largest side of the board in pixels
+    public static final int MIN_CELL_SIZE = 6, MAX_CELL_SIZE = 96, MAX_BOARD_SIZE = 4096;
+    //Cells smaller than this show marks instead of values
+    protected static final int MIN_DETAILED_CELL_SIZE = 14;
+
+    //The font of the values, at the default cell size
+    protected static final Font VALUE_FONT = new Font("Serif", Font.PLAIN, 30);
+    //The rendering context of the cached glyphs (antialiased, fractional metrics)
+    protected static final FontRenderContext RENDER_CONTEXT = new FontRenderContext(null, true, true);
+    //The width of the lines between the cells and between the boxes
+    private static final int CELL_LINE = 1, BOX_LINE = 3;
+    //The colors of the values that can and cannot be changed, and of the pencil marks
+    private static final Color VALUE_COLOR = Color.BLACK, LOCKED_COLOR = Color.GRAY, MARK_COLOR = new Color(90, 90, 160);
+    //The colors of the cells in conflict in free entry
+    private static final Color CONFLICT_COLOR = new Color(200, 0, 0), CONFLICT_BACKGROUND = new Color(255, 0, 0, 60);
+    //The colors of the cell of a hint and of the cells that justify it
+    private static final Color HINT_BACKGROUND = new Color(0, 200, 0, 90), REASON_BACKGROUND = new Color(255, 200, 0, 90);
+    //The smallest side of a pencil mark in pixels
+    private static final int MIN_MARK_SIZE = 7;
+
     //Parent window
     private final MainForm parent;
     //Handling game
     private final Sudoku game;
-    //Cells
-    private final List<JButton> guiCells = new LinkedList<>();
+    //The cells given at the start, which cannot be changed
+    private final boolean[] given;
+    //The snapshot of the game being painted
+    private Sudoku.Snapshot shown;
+    //The size of the cells in pixels
+    private int cellSize = CELL_SIZE.width;
+    //The glyphs of the values in numbers and in letters, and where each one is drawn in its cell, for the cell size
+    private final GlyphVector[] numberGlyphs, letterGlyphs;
+    private final float[][] numberOffsets, letterOffsets;
+    //The glyphs of the pencil marks, each centered in its part of a cell, and the parts per side of a cell
+    private final GlyphVector[] pencilGlyphs;
+    private final float[][] pencilOffsets;
+    private final int pencilSide;
+    //The marks of the values when the cells are too small for glyphs
+    private final Color[] marks;
+    //The cached layer under the values, painted on first use for the cell size
+    private BufferedImage layer = null;
     //Wordoku toggle
     private boolean letters = false;
-    
+    //Pencil marks toggle
+    private boolean pencilMarks = false;
+    //Free entry toggle: any value is accepted and conflicts are highlighted
+    private boolean freeEntry = false;
+    //The hint shown until the next change, and the cells that justify it
+    private Hint hint = null;
+    private boolean[] isReason = null;
+
     /**
      * Constructs the object given its parent window
      * @param parent The parent window
      */
     public GUISudokuBoard(MainForm parent) {
         super(null);    //No layout
-        
+
         if(parent == null)
             throw new NullPointerException("Parent is null");
-        
+
         Sudoku game = parent.getGame();
-        
+
         if(game == null)
             throw new NullPointerException("The sudoku game is null");
-    
-    
+
         int d = game.getBoardDimension();
-        int b = game.getBoxDimension();
-        
-        setSize(d*CELL_SIZE.width, d*CELL_SIZE.height); //Size gameDimension*CELL_SIZE
-        
-        for(int j = 0; j < d; ++j) {
-            for(int i = 0; i < d; ++i) {
-                JButton guiCell = new JButton();
-                guiCell.setSize(CELL_SIZE);
-                guiCell.setLocation(i*CELL_SIZE.width, j*CELL_SIZE.height); //Location = cellsize .* [i j]
-                guiCell.setBackground(Color.WHITE);
-                guiCell.setForeground(Color.BLACK);
-                //Set Borders
-                if (j%b == 0) {
-                    //UP
-                    if(i%b == 0) {
-                        //LEFT
-                        guiCell.setBorder(UL_BORDER);
-                    } else if (i%b + 1 != b) {
-                        //MIDDLE
-                        guiCell.setBorder(U_BORDER);
-                    } else {
-                        //RIGHT
-                        guiCell.setBorder(UR_BORDER);
-                    }
-                } else if (j%b + 1 != b) {
-                    //MIDDLE
-                    if(i%b == 0) {
-                        //LEFT
-                        guiCell.setBorder(L_BORDER);
-                    } else if (i%b + 1 != b) {
-                        //MIDDLE
-                        guiCell.setBorder(M_BORDER);
-                    } else {
-                        //RIGHT
-                        guiCell.setBorder(R_BORDER);
-                    }
-                } else {
-                    //BOTTOM
-                    if(i%b == 0) {
-                        //LEFT
-                        guiCell.setBorder(DL_BORDER);
-                    } else if (i%b + 1 != b) {
-                        //MIDDLE
-                        guiCell.setBorder(D_BORDER);
-                    } else {
-                        //RIGHT
-                        guiCell.setBorder(DR_BORDER);
-                    }
-                }
-                
-                guiCell.setFont(new Font("Serif", Font.PLAIN, 30));
-                guiCell.addActionListener(this::onClick);
-            
-                if(!game.isCellEmpty(game.get(i, j)))
-                    guiCell.setEnabled(false);
-                
-                add(guiCell);
-                guiCells.add(guiCell);
+
+        setOpaque(true);
+
+        given = new boolean[d*d];
+        shown = game.getSnapshot();
+        for(int idx = 0; idx < d*d; ++idx)
+            given[idx] = !game.isCellEmpty(shown.get(idx));
+
+        numberGlyphs  = new GlyphVector[d + 1];
+        letterGlyphs  = new GlyphVector[d + 1];
+        numberOffsets = new float[d + 1][];
+        letterOffsets = new float[d + 1][];
+        pencilGlyphs  = new GlyphVector[d + 1];
+        pencilOffsets = new float[d + 1][];
+        pencilSide    = (int) Math.ceil(Math.sqrt(d));
+        marks         = new Color[d + 1];
+        for(int v = 1; v <= d; ++v)
+            marks[v] = Color.getHSBColor((v - 1) / (float) d, .7f, .8f);
+        this.game = game;
+        setCellSize(CELL_SIZE.width);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                onClick(e);
             }
-        }
+        });
+
         this.parent = parent;
-        this.game = game;
+    }
+
+    /**
+     * Getter for the cell size
+     * @return the size of the cells in pixels
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the largest cell size, which keeps the board and its layer within {@link #MAX_BOARD_SIZE}
+     * @return the largest cell size for this board
+     */
+    public int getMaxCellSize() {
+        return Math.max(MIN_CELL_SIZE, Math.min(MAX_CELL_SIZE, MAX_BOARD_SIZE / game.getBoardDimension()));
+    }
+
+    /**
+     * Zooms the board, laying the glyphs out again and dropping the layer
+     * @param size The new size of the cells, clamped to [{@link #MIN_CELL_SIZE}, {@link #getMaxCellSize()}]
+     */
+    public void setCellSize(int size) {
+        size = Math.max(MIN_CELL_SIZE, Math.min(getMaxCellSize(), size));
+        int d = game.getBoardDimension();
+        cellSize = size;
+        layer = null;
+
+        Font font = VALUE_FONT.deriveFont(VALUE_FONT.getSize2D() * size / CELL_SIZE.width);
+        for(int v = 1; v <= d; ++v) {
+            numberGlyphs[v]  = font.createGlyphVector(RENDER_CONTEXT, Integer.toString(v));
+            letterGlyphs[v]  = font.createGlyphVector(RENDER_CONTEXT, String.valueOf((char)('A' + v - 1)));
+            numberOffsets[v] = centerOf(numberGlyphs[v], size);
+            letterOffsets[v] = centerOf(letterGlyphs[v], size);
+        }
+        
+        int part = size / pencilSide;
+        Font pencilFont = VALUE_FONT.deriveFont(VALUE_FONT.getSize2D() * part / CELL_SIZE.width * 1.5f);
+        for(int v = 1; v <= d; ++v) {
+            pencilGlyphs[v]  = pencilFont.createGlyphVector(RENDER_CONTEXT, Integer.toString(v));
+            pencilOffsets[v] = centerOf(pencilGlyphs[v], part);
+            pencilOffsets[v][0] += ((v - 1) % pencilSide) * part + (size - part*pencilSide)/2f;
+            pencilOffsets[v][1] += ((v - 1) / pencilSide) * part + (size - part*pencilSide)/2f;
+        }
+
+        Dimension boardSize = new Dimension(d*size, d*size);
+        setPreferredSize(boardSize);
+        setSize(boardSize);
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Checks if the cells are large enough for values and labels
+     * @return true if the cells show their values, false if they show marks
+     */
+    protected boolean isDetailed() {
+        return cellSize >= MIN_DETAILED_CELL_SIZE;
+    }
+
+    /**
+     * Finds where a glyph is drawn to be centered in a cell
+     * @param glyphs    The glyph
+     * @param size      The size of the cell
+     * @return the x and y offsets from the upper left corner of the cell
+     */
+    private static float[] centerOf(GlyphVector glyphs, int size) {
+        Rectangle2D bounds = glyphs.getVisualBounds();
+        return new float[] {
+                (float) ((size - bounds.getWidth())/2 - bounds.getX()),
+                (float) ((size - bounds.getHeight())/2 - bounds.getY())
+        };
+    }
+
+    //Listens to the game while shown
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        game.addListener(this);
+    }
+    
+    @Override
+    public void removeNotify() {
+        game.removeListener(this);
+        super.removeNotify();
+    }
+    
+    //Repaints the changed cells, on the event dispatch thread
+    @Override
+    public void cellsChanged(Sudoku game, int[] cells) {
+        if(!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> cellsChanged(game, cells));
+            return;
+        }
+        showHint(null);
+        shown = game.getSnapshot();     //At least as new as the cells, whose changes are then all painted
+        for(int idx : cells) {
+            if(pencilMarks || freeEntry)    //The candidates or conflicts of the peers may change too
+                repaintPeers(idx);
+            else
+                repaintCell(idx);
+        }
+    }
+    
+    @Override
+    public void cellsReset(Sudoku game, int[] cells) {
+        cellsChanged(game, cells);
     }
     
-    //On updateUI set wordoku and if complete lock all cells
+    //Every cell is locked
+    @Override
+    public void completed(Sudoku game) {
+        if(!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> completed(game));
+            return;
+        }
+        refresh();
+    }
+    
+    //On updateUI repaint the cells that changed
     @Override
     public void updateUI() {
         super.updateUI();
-        if (game != null) {
-            
-            boolean isComplete = game.isComplete();
-            
-            for(int j = 0; j < game.getBoardDimension(); ++j) {
-                for(int i = 0; i < game.getBoardDimension(); ++i) {
-                    JButton cell = guiCells.get(i + j*game.getBoardDimension());
-                    if(isComplete)
-                        cell.setEnabled(false);
-                    int v = game.get(i, j);
-                    if( v != 0 )
-                        cell.setText(String.valueOf((char)((letters?'A':'1')+v-1)));
-                    else
-                        cell.setText("");
+        if (game != null)
+            refresh();
+    }
+
+    /**
+     * Repaints the cells whose value changed since they were last painted, or the whole board if the game was
+     * completed. The game reports its changes, so this is only needed when they might have been missed.
+     */
+    public void refresh() {
+        Sudoku.Snapshot latest = game.getSnapshot(), old = shown;
+        shown = latest;
+        if(latest.isComplete() != old.isComplete()) {   //Every cell changes color
+            repaint();
+            return;
+        }
+
+        for(int idx = 0; idx < given.length; ++idx)
+            if(latest.get(idx) != old.get(idx))
+                repaintCell(idx);
+    }
+
+    /**
+     * Repaints a single cell
+     * @param idx The row major index of the cell
+     */
+    protected void repaintCell(int idx) {
+        int d = game.getBoardDimension();
+        repaint((idx%d)*cellSize, (idx/d)*cellSize, cellSize, cellSize);
+    }
+
+    /**
+     * Repaints a cell and the cells whose candidates depend on it: its row, column and box
+     * @param idx The row major index of the cell
+     */
+    protected void repaintPeers(int idx) {
+        int d = game.getBoardDimension(), b = game.getBoxDimension();
+        int i = idx%d, j = idx/d;
+        repaint(0, j*cellSize, d*cellSize, cellSize);
+        repaint(i*cellSize, 0, cellSize, d*cellSize);
+        repaint((i/b)*b*cellSize, (j/b)*b*cellSize, b*cellSize, b*cellSize);
+    }
+
+    //Copies the layer and paints the values in the clip over it
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        if(layer == null)
+            layer = createLayer();
+        g.drawImage(layer, 0, 0, null);    //Only the clip is copied
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+
+        int d = game.getBoardDimension();
+        Rectangle clip = g.getClipBounds();
+        if(clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        //The cells that intersect the clip
+        int i0 = Math.max(0, clip.x/cellSize), i1 = Math.min(d - 1, (clip.x + clip.width)/cellSize);
+        int j0 = Math.max(0, clip.y/cellSize), j1 = Math.min(d - 1, (clip.y + clip.height)/cellSize);
+        boolean detailed = isDetailed();
+        boolean pencil = pencilMarks && detailed && cellSize/pencilSide >= MIN_MARK_SIZE
+                && d <= Sudoku.MAX_CANDIDATE_DIMENSION;
+        int inset = cellSize/4;
+        for(int j = j0; j <= j1; ++j) {
+            for(int i = i0; i <= i1; ++i) {
+                if(hint != null && (hint.getCell() == i + j*d || isReason[i + j*d])) {
+                    g.setColor(hint.getCell() == i + j*d ? HINT_BACKGROUND : REASON_BACKGROUND);
+                    g.fillRect(i*cellSize, j*cellSize, cellSize, cellSize);
+                }
+                int v = shown.get(i + j*d);
+                if(v == Sudoku.EMPTY_VALUE) {
+                    if(pencil)
+                        paintPencilMarks(g, i, j);
+                    continue;
+                }
+                if(shown.isInConflict(i + j*d)) {
+                    g.setColor(CONFLICT_BACKGROUND);
+                    g.fillRect(i*cellSize, j*cellSize, cellSize, cellSize);
+                }
+                if(!detailed) {     //A mark, smaller for the cells that can be changed
+                    int m = given[i + j*d] ? inset/2 : inset;
+                    g.setColor(marks[v]);
+                    g.fillRect(i*cellSize + m, j*cellSize + m, cellSize - 2*m, cellSize - 2*m);
+                    continue;
                 }
+                g.setColor(shown.isInConflict(i + j*d) ? CONFLICT_COLOR
+                        : given[i + j*d] || shown.isComplete() ? LOCKED_COLOR : VALUE_COLOR);
+                float[] offset = (letters ? letterOffsets : numberOffsets)[v];
+                g.drawGlyphVector((letters ? letterGlyphs : numberGlyphs)[v],
+                        i*cellSize + offset[0], j*cellSize + offset[1]);
             }
         }
     }
-    
+
+    /**
+     * Paints the candidates of an empty cell as small numbers, each value in its own place
+     * @param g The graphics
+     * @param i The column of the cell
+     * @param j The row of the cell
+     */
+    private void paintPencilMarks(Graphics2D g, int i, int j) {
+        long candidates = shown.getCandidates(i + j*game.getBoardDimension());
+        g.setColor(MARK_COLOR);
+        for(; candidates != 0; candidates &= candidates - 1) {
+            int v = Long.numberOfTrailingZeros(candidates) + 1;
+            g.drawGlyphVector(pencilGlyphs[v], i*cellSize + pencilOffsets[v][0], j*cellSize + pencilOffsets[v][1]);
+        }
+    }
+
+    /**
+     * Creates the layer under the values
+     * @return the layer, painted by {@link #paintLayer(Graphics2D)}
+     */
+    private BufferedImage createLayer() {
+        int size = game.getBoardDimension()*cellSize;
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        BufferedImage image = configuration != null
+                ? configuration.createCompatibleImage(size, size)
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            paintLayer(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Paints what does not change during the game, once: the cell backgrounds and the lines over them
+     * @param g The graphics of the layer
+     */
+    protected void paintLayer(Graphics2D g) {
+        paintCellBackgrounds(g);
+
+        int d = game.getBoardDimension();
+        int b = game.getBoxDimension();
+        int size = d*cellSize;
+        int boxLine = isDetailed() ? BOX_LINE : CELL_LINE + 1;
+        g.setColor(Color.BLACK);
+        for(int k = 0; k <= d; ++k) {
+            int w = k%b == 0 ? boxLine : CELL_LINE;
+            g.fillRect(Math.min(Math.max(k*cellSize - w/2, 0), size - w), 0, w, size);   //Outer lines inside the board
+            g.fillRect(0, Math.min(Math.max(k*cellSize - w/2, 0), size - w), size, w);
+        }
+    }
+
+    /**
+     * Paints the backgrounds of the cells into the layer, white by default
+     * @param g The graphics of the layer
+     */
+    protected void paintCellBackgrounds(Graphics2D g) {
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, game.getBoardDimension()*cellSize, game.getBoardDimension()*cellSize);
+    }
+
     /**
      * Toggles wordoku
      */
     public void toggleWordoku() {
         letters = !letters;
-        updateUI();
+        repaint();
     }
-    
+
+    /**
+     * Shows or hides the candidates of the empty cells
+     * @param pencilMarks true to show them, false to hide them
+     */
+    public void setPencilMarks(boolean pencilMarks) {
+        this.pencilMarks = pencilMarks;
+        repaint();
+    }
+
+    /**
+     * Switches free entry on or off. In free entry any value is accepted and the cells in conflict are highlighted,
+     * otherwise values that break the rules are refused.
+     * @param freeEntry true for free entry, false otherwise
+     */
+    public void setFreeEntry(boolean freeEntry) {
+        this.freeEntry = freeEntry;
+    }
+
+    /**
+     * Highlights the cell of a hint and the cells that justify it, until the next change of the board
+     * @param hint The hint, or null to remove the highlight
+     */
+    public void showHint(Hint hint) {
+        if(this.hint != null) {
+            repaintCell(this.hint.getCell());
+            for(int idx : this.hint.getReasons())
+                repaintCell(idx);
+        }
+        this.hint = hint;
+        if(hint == null)
+            return;
+        isReason = new boolean[given.length];
+        repaintCell(hint.getCell());
+        for(int idx : hint.getReasons()) {
+            isReason[idx] = true;
+            repaintCell(idx);
+        }
+    }
+
     /**
      * Executes on completion
      */
     protected void onCompletion() {
         JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("completed_game"));
     }
-    
+
     /**
      * Handler for the click event
-     * @param e The action performed
+     * @param e The mouse event
      */
-    private void onClick(ActionEvent e) {
-        int i = Arrays.asList(getComponents()).indexOf(e.getSource());  //Get the index of the clicked cell
-        if( i == -1 )   //If -1 then it does not exist ?
+    private void onClick(MouseEvent e) {
+        int d = game.getBoardDimension();
+        if(e.getX() < 0 || e.getY() < 0 || e.getX() >= d*cellSize || e.getY() >= d*cellSize)
             return;
-    
+        int i = e.getX()/cellSize + (e.getY()/cellSize)*d;  //The index of the clicked cell
+        if(given[i] || shown.isComplete() || !isEnabled())  //Locked cell, or a solver owns the game
+            return;
+
         String input = JOptionPane.showInputDialog(LanguageSettings.getMessageBundle().getString("value") + ":");   //Get the input
         if (input == null) //If cancel return
             return;
-    
+
         if (input.equals("")) { //If empty then reset
             game.reset(i);
         } else {
@@ -188,20 +496,17 @@ public class GUISudokuBoard extends JPanel {
                     return;
                 }
             }
-        
 
-            if( !game.replace(i, v) )   //Replace value
+
+            if( !(freeEntry ? game.enter(i, v) : game.replace(i, v)) )  //Enter or replace value
                 JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("not_legal"));
         }
-    
-        SwingUtilities.updateComponentTreeUI(parent);   //Update tree
-    
-    
+
         if(game.isComplete())   //If complete then run onCompletion
             onCompletion();
     }
-    
-    
+
+
     /**
      * Getter for the game
      * @return the game
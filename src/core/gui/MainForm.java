@@ -2,8 +2,14 @@ package core.gui;
 
 import core.LanguageSettings;
 import core.DiskManager;
+import core.GamePrefetcher;
 import core.game.*;
 import core.game.solvers.BacktrackingSolver;
+import core.game.solvers.CandidateSolver;
+import core.game.solvers.DuidokuTablebase;
+import core.game.solvers.Hint;
+import core.game.solvers.HintEngine;
+import core.game.solvers.PortfolioSolver;
 import core.game.sudoku.Duidoku;
 import core.game.sudoku.Sudoku;
 import core.gui.localized.LocalizedJMenu;
@@ -11,18 +17,33 @@ import core.gui.localized.LocalizedJMenuItem;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /** The main window of the game */
 public class MainForm extends JFrame {
     
     //The size of the window
     private static final Dimension WINDOW_SIZE = new Dimension(800, 800);
+    //Where the board is shown
+    private static final Rectangle VIEW_BOUNDS = new Rectangle(100, 110, 600, 600);
     
     //The game panel
     private GUISudokuBoard gamePanel    = null;
+    //The view of the game panel
+    private GUIBoardView boardView      = null;
+    //Whether the boards show pencil marks
+    private boolean pencilMarks         = false;
+    //Whether the boards accept any value and highlight conflicts
+    private boolean freeEntry           = false;
+    //Whether the duidoku games play perfectly
+    private boolean perfectDuidoku      = false;
     //The user menu
     private final JMenu userMenu        = new LocalizedJMenu("user_menu_item");
     //The gui stats panel
@@ -32,8 +53,18 @@ public class MainForm extends JFrame {
     private Sudoku game = null;
     //The current user
     private User   user = null;
-    //The users that play the game
-    private final Set<User> users = new HashSet<>();
+    //The names of the users that play the game
+    private final Set<String> userNames = new HashSet<>();
+    //Loads the next games of the current user in the background
+    private GamePrefetcher prefetcher = null;
+    //The solution of the current game, null if not known
+    private Sudoku solution = null;
+    //The number of new games asked for, a game taken in the background is shown only if it was the last one
+    private int gameRequests = 0;
+    //Solves the games, racing a solver per core up to two
+    private final PortfolioSolver solver = new PortfolioSolver(
+            java.util.List.of(new CandidateSolver(), new BacktrackingSolver()),
+            Math.min(2, Runtime.getRuntime().availableProcessors()));
     
     /**
      * Default construction of the object
@@ -65,6 +96,16 @@ public class MainForm extends JFrame {
                     item.addActionListener(e -> loadNewDuidoku());
                     menu.add(item);
                 }
+                {   // Perfect Duidoku
+                    JMenuItem item = new LocalizedJMenuItem("perfect_duidoku_item");
+                    item.addActionListener(e -> perfectDuidokuToggle());
+                    menu.add(item);
+                }
+                {   // Free entry
+                    JMenuItem item = new LocalizedJMenuItem("free_entry_item");
+                    item.addActionListener(e -> freeEntryToggle());
+                    menu.add(item);
+                }
                 menuBar.add(menu);
             }
             {   // User menu
@@ -75,14 +116,6 @@ public class MainForm extends JFrame {
                     menu.add(item);
                 }
                 menuBar.add(menu);
-                {   // Load Users
-                    users.addAll(DiskManager.loadAllUsers());
-                    for(User user : users) {
-                        JMenuItem item = new JMenuItem(user.getName());
-                        item.addActionListener(e -> selectUser(user));
-                        menu.add(item);
-                    }
-                }
             }
             {   // Solve menu
                 JMenu menu = new LocalizedJMenu("solve");
@@ -91,6 +124,12 @@ public class MainForm extends JFrame {
                     item.addActionListener(e -> solveCurrent());
                     menu.add(item);
                 }
+                {
+                    JMenuItem item = new LocalizedJMenuItem("hint_item");
+                    item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK));
+                    item.addActionListener(e -> showHint());
+                    menu.add(item);
+                }
                 menuBar.add(menu);
             }
             {   // Wordoku menu
@@ -102,6 +141,34 @@ public class MainForm extends JFrame {
                 }
                 menuBar.add(menu);
             }
+            {   // View menu
+                JMenu menu = new LocalizedJMenu("view_menu_item");
+                {
+                    JMenuItem item = new LocalizedJMenuItem("pencil_marks_item");
+                    item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, InputEvent.CTRL_DOWN_MASK));
+                    item.addActionListener(e -> pencilMarksToggle());
+                    menu.add(item);
+                }
+                {
+                    JMenuItem item = new LocalizedJMenuItem("zoom_in_item");
+                    item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_EQUALS, InputEvent.CTRL_DOWN_MASK));
+                    item.addActionListener(e -> { if(boardView != null) boardView.zoomIn(); });
+                    menu.add(item);
+                }
+                {
+                    JMenuItem item = new LocalizedJMenuItem("zoom_out_item");
+                    item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_MINUS, InputEvent.CTRL_DOWN_MASK));
+                    item.addActionListener(e -> { if(boardView != null) boardView.zoomOut(); });
+                    menu.add(item);
+                }
+                {
+                    JMenuItem item = new LocalizedJMenuItem("zoom_fit_item");
+                    item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, InputEvent.CTRL_DOWN_MASK));
+                    item.addActionListener(e -> { if(boardView != null) boardView.fit(); });
+                    menu.add(item);
+                }
+                menuBar.add(menu);
+            }
             {   // Language menu
                 JMenu menu = new LocalizedJMenu("language_menu_item");
                 { // English item
@@ -129,10 +196,38 @@ public class MainForm extends JFrame {
     
     
     /**
-     * Solve the current game
+     * Lists the users on a background thread, adding them to the user menu as they arrive.
+     * Also warms up what is not needed for the first frame.
+     */
+    public void loadUsersInBackground() {
+        new SwingWorker<Void, String>() {
+            @Override
+            protected Void doInBackground() {
+                for(String name : DiskManager.loadUserNames())
+                    publish(name);
+                LanguageSettings.getMessageBundle();    //Needed on the first dialog
+                return null;
+            }
+            
+            @Override
+            protected void process(java.util.List<String> names) {
+                for(String name : names) {  //Each user is loaded when selected
+                    if(!userNames.add(name))
+                        continue;
+                    JMenuItem item = new JMenuItem(name);
+                    item.addActionListener(e -> selectUser(DiskManager.loadUser(name)));
+                    userMenu.add(item);
+                }
+            }
+        }.execute();
+    }
+    
+    /**
+     * Solve the current game on a background thread. The board shows the published snapshots meanwhile and ignores
+     * input until the solver is done, so the event dispatch thread never waits for it.
      */
     protected void solveCurrent() {
-        if (game == null)   // If no game yet return
+        if (game == null || !gamePanel.isEnabled())   // If no game yet or already solving return
             return;
         if(JOptionPane.showConfirmDialog(null, LanguageSettings.getMessageBundle().getString("auto_solve_message")) == JOptionPane.YES_OPTION) { //Double check if the user is ok with it
             if( game instanceof Duidoku ) { //If game is a duidoku variant then solve has no meaning
@@ -141,11 +236,51 @@ public class MainForm extends JFrame {
             }
             
             
-            if(new BacktrackingSolver().solve(game))    //Else solve game and if succeed update UI
-                gamePanel.updateUI();
-            else
-                JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("not_solvable_sudoku"));
+            Sudoku target = game, known = solution;
+            GUISudokuBoard panel = gamePanel;
+            panel.setEnabled(false);
+            new SwingWorker<Boolean, Void>() {
+                @Override
+                protected Boolean doInBackground() {   //Else solve game, the panel shows the solution
+                    return (known != null && fill(target, known)) || solver.solve(target);
+                }
+                
+                @Override
+                protected void done() {
+                    panel.setEnabled(true);
+                    try {
+                        if(!get())
+                            JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("not_solvable_sudoku"));
+                    } catch(InterruptedException | ExecutionException e) {
+                        throw new IllegalStateException("Solver failed", e);
+                    }
+                }
+            }.execute();
+        }
+    }
+    
+    /**
+     * Show the easiest next deduction of the current game on the board and describe it
+     */
+    protected void showHint() {
+        if (game == null)   // If no game yet return
+            return;
+        if( game instanceof Duidoku ) { //Deductions have no meaning against the AI
+            JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("no_hint_duidoku"));
+            return;
+        }
+        
+        ResourceBundle messages = LanguageSettings.getMessageBundle();
+        Hint hint = game.getBoardDimension() <= Sudoku.MAX_CANDIDATE_DIMENSION   //On a copy, as a solver may own the game
+                ? HintEngine.next(game.getSnapshot().restore(new User(user.getName()))) : null;
+        gamePanel.showHint(hint);
+        if(hint == null) {
+            JOptionPane.showMessageDialog(null, messages.getString("no_hint"));
+            return;
         }
+        int d = game.getBoardDimension();
+        JOptionPane.showMessageDialog(null, MessageFormat.format(messages.getString("hint_message"),
+                hint.getValue(), hint.getCell()/d + 1, hint.getCell()%d + 1, messages.getString(hint.getTechnique().getKey())));
     }
     
     /** Toggle wordoku if a gamePanel exists */
@@ -154,6 +289,32 @@ public class MainForm extends JFrame {
             gamePanel.toggleWordoku();
     }
     
+    /** Toggle the pencil marks of this and the next game panels */
+    protected void pencilMarksToggle() {
+        pencilMarks = !pencilMarks;
+        if(gamePanel != null)
+            gamePanel.setPencilMarks(pencilMarks);
+    }
+    
+    /** Toggle free entry of this and the next game panels */
+    protected void freeEntryToggle() {
+        freeEntry = !freeEntry;
+        if(gamePanel != null)
+            gamePanel.setFreeEntry(freeEntry);
+    }
+    
+    /** Toggle the perfect AI of this and the next duidoku games, loading its table in the background */
+    protected void perfectDuidokuToggle() {
+        perfectDuidoku = !perfectDuidoku;
+        if(perfectDuidoku) {    //The first move waits for the table only if it is not loaded by then
+            Thread loader = new Thread(DuidokuTablebase::get, "duidoku-tablebase");
+            loader.setDaemon(true);
+            loader.start();
+        }
+        if(game instanceof Duidoku)
+            ((Duidoku)game).setOpponent(perfectDuidoku ? Duidoku.Level.PERFECT : Duidoku.Level.SIMPLE);
+    }
+    
     /** Update display language by updating the ui recursively */
     public void updateDisplayLanguage() {
         setTitle(LanguageSettings.getGuiBundle().getString("title"));
@@ -183,49 +344,97 @@ public class MainForm extends JFrame {
     }
     
     
+    /**
+     * Fills the empty cells of a game from its solution, if the filled cells agree with it
+     * @param game      The game
+     * @param solution  The solved copy of the game
+     * @return true if the game was filled, false if a cell disagrees and the game was left untouched
+     */
+    private static boolean fill(Sudoku game, Sudoku solution) {
+        int n = game.getBoardDimension()*game.getBoardDimension();
+        for(int i = 0; i < n; ++i)
+            if(!game.isCellEmpty(game.get(i)) && game.get(i) != solution.get(i))
+                return false;
+        game.beginBatch();  //The panel shows the filled board at once
+        try {
+            for(int i = game.findEmptyCell(0); i != -1; i = game.findEmptyCell(i + 1))
+                game.place(i, solution.get(i));
+        } finally {
+            game.endBatch();
+        }
+        return true;
+    }
+    
     /** Load a new Sudoku game */
     private void loadNewSudoku() {
-        if(gamePanel != null)   // Remove old gamePanel
-            remove(gamePanel);
-        game = DiskManager.loadSudoku(user);    //Load new game for the user
-        
-        if (game == null) { //If not new game found
-            JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("no_new_games"));
-            return;
-        }
-        
-        gamePanel = new GUISudokuBoard(this);   //New panel
-        gamePanel.setLocation((getWidth() - gamePanel.getWidth())/2, (getHeight() - gamePanel.getHeight())/2);  //Center it
-        add(gamePanel);
-        SwingUtilities.updateComponentTreeUI(this);
+        loadNewGame(GamePrefetcher::takeSudoku, GUISudokuBoard::new);
     }
     
     /** Load a new KillerSudoku game */
     private void loadNewKillerSudoku() {
-        if(gamePanel != null) // Remove old gamePanel
-            remove(gamePanel);
-        game = DiskManager.loadKillerSudoku(user);  //Load new game for the user
-        
-        if (game == null) { //If not new game found
-            JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("no_new_games"));
-            return;
-        }
-        
-        gamePanel = new GUIKillerSudokuBoard(this); //New panel
-        gamePanel.setLocation((getWidth() - gamePanel.getWidth())/2, (getHeight() - gamePanel.getHeight())/2); //Center it
-        add(gamePanel);
-        SwingUtilities.updateComponentTreeUI(this);
+        loadNewGame(GamePrefetcher::takeKillerSudoku, GUIKillerSudokuBoard::new);
+    }
+    
+    /**
+     * Load a new game prefetched for the user. It is taken on a background thread, as it may still be loading, and
+     * shown once it is there, so the event dispatch thread never waits for it.
+     * @param take      Takes the game from the prefetcher
+     * @param newPanel  Creates the panel of the game
+     */
+    private void loadNewGame(Function<GamePrefetcher, GamePrefetcher.Game> take, Function<MainForm, GUISudokuBoard> newPanel) {
+        int request = ++gameRequests;
+        GamePrefetcher source = prefetcher;
+        new SwingWorker<GamePrefetcher.Game, Void>() {
+            @Override
+            protected GamePrefetcher.Game doInBackground() {
+                return take.apply(source);  //Prefetched new game for the user
+            }
+            
+            @Override
+            protected void done() {
+                GamePrefetcher.Game next;
+                try {
+                    next = get();
+                } catch(InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException("Loading failed", e);
+                }
+                if(request != gameRequests || source != prefetcher)  //An other game or user was chosen meanwhile
+                    return;
+                if(next == null) {  //If not new game found
+                    JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("no_new_games"));
+                    return;
+                }
+                
+                if(boardView != null)   // Remove old gamePanel
+                    remove(boardView);
+                game = next.getGame();
+                solution = next.getSolution();
+                gamePanel = newPanel.apply(MainForm.this);  //New panel
+                showGamePanel();
+            }
+        }.execute();
     }
     
     /** Load new Duidoku game */
     private void loadNewDuidoku() {
-        if(gamePanel != null) // Remove old gamePanel
-            remove(gamePanel);
+        ++gameRequests;         //Supersedes a game still being taken
+        if(boardView != null)   // Remove old gamePanel
+            remove(boardView);
         
         game = new Duidoku(user);
+        solution = null;
+        ((Duidoku)game).setOpponent(perfectDuidoku ? Duidoku.Level.PERFECT : Duidoku.Level.SIMPLE);
         gamePanel = new GUIDuidokuBoard(this); //New panel
-        gamePanel.setLocation((getWidth() - gamePanel.getWidth())/2, (getHeight() - gamePanel.getHeight())/2); //Center it
-        add(gamePanel);
+        showGamePanel();
+    }
+    
+    /** Shows the new game panel in a view */
+    private void showGamePanel() {
+        gamePanel.setPencilMarks(pencilMarks);
+        gamePanel.setFreeEntry(freeEntry);
+        boardView = new GUIBoardView(gamePanel, VIEW_BOUNDS.getSize());
+        boardView.setLocation(VIEW_BOUNDS.getLocation());
+        add(boardView);
         SwingUtilities.updateComponentTreeUI(this);
     }
     
@@ -246,8 +455,8 @@ public class MainForm extends JFrame {
     private void createNewUser(String username) {
         if (username == null)
             return;
-        User user = new User(username);
-        if(!users.add(user)) {
+        User user = DiskManager.createUser(username);   //Saved now and on every change
+        if(user == null || !userNames.add(username)) {
             JOptionPane.showMessageDialog(null, LanguageSettings.getMessageBundle().getString("username_taken"));
         } else {
             JMenuItem item = new JMenuItem(username);
@@ -264,6 +473,11 @@ public class MainForm extends JFrame {
     private void selectUser(User user) {
         if(user == null)
             user = User.ANONYMOUS;
+        if(user != this.user) {     //The prefetched games belong to the old user
+            if(prefetcher != null)
+                prefetcher.shutdown();
+            prefetcher = new GamePrefetcher(user);
+        }
         this.user = user;
         
         statsPanel.setUser(user);
@@ -289,7 +503,9 @@ public class MainForm extends JFrame {
     private class ClosingListener extends WindowAdapter {
         @Override
         public void windowClosing(WindowEvent e) {
-            DiskManager.saveUsers(users);
+            if(prefetcher != null)
+                prefetcher.shutdown();
+            DiskManager.flushUsers();
             super.windowClosing(e);
         }
     }
@@ -0,0 +1,49 @@
+package core.library;
+
+import java.io.IOException;
+
+/** Signals a malformed puzzle file, pointing at the offending position */
+public class PuzzleFormatException extends IOException {
+
+    //The file, line and column of the error
+    private final String file;
+    private final int line, column;
+
+    /**
+     * Constructs the exception
+     * @param file      The name of the file
+     * @param line      The line of the error (1 based)
+     * @param column    The column of the error (1 based)
+     * @param message   What was wrong
+     */
+    public PuzzleFormatException(String file, int line, int column, String message) {
+        super(String.format("%s:%d:%d: %s", file, line, column, message));
+        this.file = file;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Getter for the file
+     * @return the name of the file
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Getter for the line
+     * @return the line of the error (1 based)
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Getter for the column
+     * @return the column of the error (1 based)
+     */
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,378 @@
+package core.library;
+
+import core.game.solvers.SolutionCounter;
+import core.game.sudoku.StandardSudoku;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams collections of standard sudoku in the 81 characters per line form into a {@link PuzzleLibrary}.
+ * <br>
+ * The input is read in fixed size chunks which are validated in parallel, while at most a few chunks are in flight,
+ * so only a few chunks of the input are in memory whatever its size. Accepted puzzles are deduplicated (against each
+ * other and against the library) and appended in input order; the hashes kept to deduplicate them take 16 to 32
+ * bytes per distinct puzzle, so they grow with the library (about 32 MB for a million puzzles at worst).
+ * <br>
+ * A line holds the 81 cells in row major order, '1'-'9' for givens and '0' or '.' for empty cells. Anything after the
+ * cells is ignored, as are empty lines and lines starting with '#'.
+ */
+public final class PuzzleImporter {
+
+    /**
+     * Imports puzzle collections into a library
+     * <br>
+     * Usage: PuzzleImporter [--unique] [--threads n] &lt;library file&gt; &lt;input&gt;... (inputs may be gzip compressed, - is stdin)
+     * @param args The options, the library file and the inputs
+     * @throws IOException if an input cannot be read or the library cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        boolean unique = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int a = 0;
+        for(; a < args.length && args[a].startsWith("--"); ++a) {
+            if(args[a].equals("--unique"))
+                unique = true;
+            else if(args[a].equals("--threads") && a + 1 < args.length)
+                threads = Integer.parseInt(args[++a]);
+            else
+                a = args.length;    //Unknown option, print the usage
+        }
+        if(args.length - a < 2) {
+            System.err.println("Usage: PuzzleImporter [--unique] [--threads n] <library file> <input>...");
+            System.exit(1);
+        }
+
+        PuzzleImporter importer = new PuzzleImporter(unique, threads, System.err);
+        importer.seen(new File(args[a]));   //Before the writer opens the library
+        try(PuzzleLibraryWriter writer = new PuzzleLibraryWriter(new File(args[a]))) {
+            for(int k = a + 1; k < args.length; ++k)
+                try(InputStream in = args[k].equals("-") ? System.in : new FileInputStream(args[k])) {
+                    importer.importFrom(in, writer);
+                }
+        }
+        importer.report(true);
+    }
+
+    //The number of puzzles validated as one task
+    private static final int CHUNK_SIZE = 4096;
+    //The minimum time between two progress reports
+    private static final long REPORT_INTERVAL_NANOS = 2_000_000_000L;
+
+    //The cells of a puzzle
+    private static final int CELLS = PuzzleLibrary.CELLS;
+    //The board and box dimensions
+    private static final int D = StandardSudoku.BOARD_DIMENSION_SIZE, B = StandardSudoku.BOX_DIMENSION_SIZE;
+
+    //The validation results
+    private static final byte ACCEPTED = 0, MALFORMED = 1, ILLEGAL = 2, NOT_UNIQUE = 3;
+
+    //Check that the puzzles have exactly one solution
+    private final boolean unique;
+    //The number of validating threads
+    private final int threads;
+    //Where the progress is reported (may be null)
+    private final PrintStream progress;
+    //The hashes of the puzzles already in the library or imported
+    private final LongHashSet hashes = new LongHashSet();
+
+    //The current input and its read buffer
+    private InputStream input;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position, limit;
+
+    //The counters of the import
+    private long read, imported, duplicates, malformed, illegal, notUnique;
+    //The start of the import and the time of the last report
+    private final long startNanos = System.nanoTime();
+    private long lastReportNanos = startNanos;
+
+    /**
+     * Constructs an importer
+     * @param unique    Reject puzzles that do not have exactly one solution
+     * @param threads   The number of validating threads
+     * @param progress  Where the progress is reported, or null
+     */
+    public PuzzleImporter(boolean unique, int threads, PrintStream progress) {
+        if(threads <= 0)
+            throw new IllegalArgumentException("Threads is not positive");
+        this.unique = unique;
+        this.threads = threads;
+        this.progress = progress;
+    }
+
+    /**
+     * Marks the puzzles of an existing library as already imported
+     * @param libraryFile The library file, ignored if it does not exist
+     * @throws IOException if the file exists but is not a library
+     */
+    public void seen(File libraryFile) throws IOException {
+        if(!libraryFile.exists() || libraryFile.length() == 0)
+            return;
+        PuzzleLibrary library = new PuzzleLibrary(libraryFile);
+        int[] board = new int[CELLS];
+        for(int id = 0; id < library.getCount(PuzzleLibrary.Kind.SUDOKU); ++id)
+            hashes.add(hash(library.readSudoku(id, board)));
+    }
+
+    /**
+     * Imports all the puzzles of an input, which may be gzip compressed
+     * @param in        The input
+     * @param writer    The library to append to
+     * @throws IOException if reading or writing fails
+     */
+    public void importFrom(InputStream in, PuzzleLibraryWriter writer) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, 1 << 16);
+        buffered.mark(2);
+        boolean gzip = buffered.read() == 0x1F && buffered.read() == 0x8B;  //The gzip magic number
+        buffered.reset();
+        input = gzip ? new GZIPInputStream(buffered, 1 << 16) : buffered;
+        position = limit = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        try {
+            Chunk chunk;
+            while((chunk = readChunk()) != null) {
+                if(inFlight.size() == 2*threads)    //Back-pressure: wait for the oldest chunk before reading more
+                    append(inFlight.removeFirst(), writer);
+                Chunk task = chunk;
+                inFlight.addLast(executor.submit(() -> validate(task)));
+            }
+            while(!inFlight.isEmpty())
+                append(inFlight.removeFirst(), writer);
+        } finally {
+            for(Future<Chunk> pending : inFlight)
+                pending.cancel(true);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the next byte of the input
+     * @return the next byte, in [0, 255], or -1 at the end of the input
+     * @throws IOException if reading fails
+     */
+    private int next() throws IOException {
+        if(position == limit) {
+            limit = input.read(buffer);
+            position = 0;
+            if(limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;   //Unsigned, a 0xFF byte is not the end
+    }
+
+    /**
+     * Reads the next chunk of puzzles
+     * @return the chunk or null at the end of the input
+     * @throws IOException if reading fails
+     */
+    private Chunk readChunk() throws IOException {
+        Chunk chunk = new Chunk();
+        int c = next();
+        while(c != -1 && chunk.size < CHUNK_SIZE) {
+            if(c == '\n' || c == '\r') {    //Empty line
+                c = next();
+                continue;
+            }
+
+            if(c == '#') {                  //Comment line
+                while(c != -1 && c != '\n' && c != '\r')
+                    c = next();
+                continue;
+            }
+
+            read++;
+            int base = chunk.size*CELLS;
+            int n = 0;
+            boolean valid = true;
+            for(; c != -1 && c != '\n' && c != '\r'; c = next()) {   //Read the rest of the line
+                if(n == CELLS)              //Ignore anything after the cells
+                    continue;
+                if(c >= '1' && c <= '9')
+                    chunk.cells[base + n++] = (byte) (c - '0');
+                else if(c == '0' || c == '.')
+                    chunk.cells[base + n++] = 0;
+                else
+                    valid = false;
+            }
+            chunk.status[chunk.size++] = valid && n == CELLS ? ACCEPTED : MALFORMED;
+        }
+        return chunk.size == 0 ? null : chunk;
+    }
+
+    /**
+     * Validates the puzzles of a chunk, in a worker thread
+     * @param chunk The chunk
+     * @return the chunk
+     */
+    private Chunk validate(Chunk chunk) {
+        int[] board = new int[CELLS];
+        for(int p = 0; p < chunk.size; ++p) {
+            if(chunk.status[p] != ACCEPTED)
+                continue;
+            for(int k = 0; k < CELLS; ++k)
+                board[k] = chunk.cells[p*CELLS + k];
+            if(!SolutionCounter.isLegal(board, D, B))
+                chunk.status[p] = ILLEGAL;
+            else if(unique && SolutionCounter.count(board, D, B, 2) != 1)
+                chunk.status[p] = NOT_UNIQUE;
+        }
+        return chunk;
+    }
+
+    /**
+     * Appends the accepted, new puzzles of a validated chunk to the library
+     * @param future    The validation of the chunk
+     * @param writer    The library
+     * @throws IOException if writing or the validation fails
+     */
+    private void append(Future<Chunk> future, PuzzleLibraryWriter writer) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Validation failed", e.getCause());
+        }
+
+        int[] board = new int[CELLS];
+        for(int p = 0; p < chunk.size; ++p) {
+            switch (chunk.status[p]) {
+                case MALFORMED:  malformed++; continue;
+                case ILLEGAL:    illegal++;   continue;
+                case NOT_UNIQUE: notUnique++; continue;
+            }
+            for(int k = 0; k < CELLS; ++k)
+                board[k] = chunk.cells[p*CELLS + k];
+            if(!hashes.add(hash(board))) {
+                duplicates++;
+                continue;
+            }
+            writer.addSudoku(board);
+            imported++;
+        }
+        report(false);
+    }
+
+    /**
+     * Reports the progress, at most once every {@link #REPORT_INTERVAL_NANOS} unless forced
+     * @param force Report regardless of the time of the last report
+     */
+    public void report(boolean force) {
+        long now = System.nanoTime();
+        if(progress == null || (!force && now - lastReportNanos < REPORT_INTERVAL_NANOS))
+            return;
+        lastReportNanos = now;
+        double seconds = Math.max(1e-9, (now - startNanos)/1e9);
+        progress.printf("read %d, imported %d, duplicates %d, malformed %d, illegal %d, not unique %d (%.0f puzzles/s)%n",
+                read, imported, duplicates, malformed, illegal, notUnique, read/seconds);
+    }
+
+    /**
+     * Getter for the number of imported puzzles
+     * @return the number of puzzles appended to the library
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Getter for the number of rejected puzzles
+     * @return the number of puzzles that were malformed, illegal, not unique or duplicates
+     */
+    public long getRejected() {
+        return duplicates + malformed + illegal + notUnique;
+    }
+
+    /**
+     * Hashes a board (64 bit, collisions are negligible for deduplication)
+     * @param board The board
+     * @return the hash of the board
+     */
+    private static long hash(int[] board) {
+        long h = 0xCBF29CE484222325L;   //FNV-1a offset basis
+        for(int cell : board) {
+            h ^= cell;
+            h *= 0x100000001B3L;        //FNV-1a prime
+        }
+        return h ^ (h >>> 29);
+    }
+
+    /** A chunk of puzzles read from the input */
+    private static final class Chunk {
+        //The cells of the puzzles, one after the other
+        final byte[] cells = new byte[CHUNK_SIZE*CELLS];
+        //The validation result of each puzzle
+        final byte[] status = new byte[CHUNK_SIZE];
+        //The number of puzzles
+        int size;
+    }
+
+    /** A set of longs with open addressing */
+    private static final class LongHashSet {
+        //The slots, 0 marks an empty slot
+        private long[] slots = new long[1 << 16];
+        //Whether 0 itself was added
+        private boolean zero;
+        //The number of elements
+        private int size;
+
+        /**
+         * Adds a value
+         * @param v The value
+         * @return true if the value was not in the set, false otherwise
+         */
+        boolean add(long v) {
+            if(v == 0) {
+                boolean added = !zero;
+                zero = true;
+                return added;
+            }
+            if(2*(size + 1) > slots.length)
+                grow();
+            if(!insert(slots, v))
+                return false;
+            size++;
+            return true;
+        }
+
+        /**
+         * Inserts a non zero value in a table
+         * @param table The table
+         * @param v     The value
+         * @return true if inserted, false if already present
+         */
+        private static boolean insert(long[] table, long v) {
+            int mask = table.length - 1;
+            int k = (int) (v ^ (v >>> 32)) & mask;
+            while(table[k] != 0) {
+                if(table[k] == v)
+                    return false;
+                k = (k + 1) & mask;
+            }
+            table[k] = v;
+            return true;
+        }
+
+        /** Doubles the table */
+        private void grow() {
+            long[] table = new long[slots.length*2];
+            for(long v : slots)
+                if(v != 0)
+                    insert(table, v);
+            slots = table;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package core.library;
+
+import core.game.sudoku.KillerSudoku;
+import core.game.sudoku.StandardSudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A read only, memory mapped library of puzzles.
+ * <br>
+ * The file starts with a fixed size header, followed by the puzzle records and one index per kind, which the header
+ * points to. Appending adds records and new indices after them, leaving the old indices as dead space:
+ * <pre>
+ * header   : magic(int) version(short) reserved(short) sudokuCount(int) killerCount(int) sudokuIndex(long) killerIndex(long)
+ * sudoku   : 41 bytes, 81 cells nibble-packed (cell k in the low nibble of byte k/2 when k is even, high nibble otherwise)
+ * killer   : cageCount(byte) then per cage sum(byte) size(byte) cells(byte * size)
+ * index    : one record offset (long) per puzzle
+ * </pre>
+ * Puzzles are addressed by their kind and their id (position in the index of that kind).
+ * The mapping is released when the library is garbage collected.
+ */
+public final class PuzzleLibrary {
+
+    /** The magic number of the library file ("SDKL") */
+    static final int MAGIC = 0x53444B4C;
+    /** The current version of the file format */
+    static final short VERSION = 1;
+    /** The size of the header in bytes */
+    static final int HEADER_SIZE = 32;
+
+    /** The number of cells of a library board */
+    public static final int CELLS = StandardSudoku.BOARD_DIMENSION_SIZE*StandardSudoku.BOARD_DIMENSION_SIZE;
+    /** The size of a nibble-packed standard sudoku record */
+    public static final int SUDOKU_RECORD_SIZE = (CELLS + 1)/2;
+
+    /** The kinds of puzzles stored in a library */
+    public enum Kind {
+        SUDOKU("sudoku"),
+        KILLER("killer");
+
+        //The suffix used for the names of this kind
+        private final String suffix;
+
+        Kind(String suffix) {
+            this.suffix = suffix;
+        }
+
+        /**
+         * Getter for the suffix
+         * @return the suffix used for the names of this kind
+         */
+        public String getSuffix() {
+            return suffix;
+        }
+    }
+
+    /**
+     * Returns the name of a library puzzle, as tracked in the played games of a user
+     * @param kind  The kind of the puzzle
+     * @param id    The id of the puzzle
+     * @return the name of the puzzle
+     */
+    public static String nameOf(Kind kind, int id) {
+        return "#" + id + "." + kind.getSuffix();
+    }
+
+    //The mapped file
+    private final MappedByteBuffer buffer;
+    //The counts of each kind
+    private final int sudokuCount, killerCount;
+    //The offsets of the index of each kind
+    private final long sudokuIndex, killerIndex;
+
+    /**
+     * Maps the given library file
+     * @param file The library file
+     * @throws IOException if the file cannot be mapped or it is not a valid library
+     */
+    public PuzzleLibrary(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE)
+                throw new IOException(file + ": not a puzzle library");
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + ": libraries larger than 2GB are not supported");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //The mapping stays valid after closing
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if(buffer.getInt(0) != MAGIC)
+            throw new IOException(file + ": not a puzzle library");
+        if(buffer.getShort(4) != VERSION)
+            throw new IOException(file + ": unsupported library version " + buffer.getShort(4));
+
+        sudokuCount = buffer.getInt(8);
+        killerCount = buffer.getInt(12);
+        sudokuIndex = buffer.getLong(16);
+        killerIndex = buffer.getLong(24);
+
+        if(sudokuIndex + 8L*sudokuCount > buffer.capacity() || killerIndex + 8L*killerCount > buffer.capacity())
+            throw new IOException(file + ": truncated puzzle library");
+    }
+
+    /**
+     * Returns the number of puzzles of a kind
+     * @param kind The kind
+     * @return the number of puzzles of that kind
+     */
+    public int getCount(Kind kind) {
+        return kind == Kind.SUDOKU ? sudokuCount : killerCount;
+    }
+
+    /**
+     * Returns the offset of a record
+     * @param kind  The kind of the puzzle
+     * @param id    The id of the puzzle
+     * @return the offset of the record in the file
+     * @throws IndexOutOfBoundsException if the id is not in the library
+     */
+    private int offsetOf(Kind kind, int id) {
+        if(id < 0 || id >= getCount(kind))
+            throw new IndexOutOfBoundsException("No " + kind.getSuffix() + " puzzle with id " + id);
+        long index = kind == Kind.SUDOKU ? sudokuIndex : killerIndex;
+        return (int) buffer.getLong((int) (index + 8L*id));
+    }
+
+    /**
+     * Unpacks a standard sudoku board
+     * @param id    The id of the puzzle
+     * @param board The board to fill, of length {@link #CELLS}
+     * @return the given board
+     */
+    public int[] readSudoku(int id, int[] board) {
+        int offset = offsetOf(Kind.SUDOKU, id);
+        for(int k = 0; k < CELLS; k += 2) {
+            int b = buffer.get(offset + k/2);
+            board[k] = b & 0xF;                 //Low nibble = even cell
+            if(k + 1 < CELLS)
+                board[k + 1] = (b >> 4) & 0xF;  //High nibble = odd cell
+        }
+        return board;
+    }
+
+    /**
+     * Reads the cages of a killer sudoku
+     * @param id The id of the puzzle
+     * @return the areas of the killer sudoku
+     */
+    public Set<KillerSudoku.Area> readKiller(int id) {
+        int offset = offsetOf(Kind.KILLER, id);
+        int cages = buffer.get(offset++) & 0xFF;
+
+        Set<KillerSudoku.Area> areas = new HashSet<>();
+        for(int c = 0; c < cages; ++c) {
+            int sum  = buffer.get(offset++) & 0xFF;
+            int size = buffer.get(offset++) & 0xFF;
+            int[] cells = new int[size];
+            for(int k = 0; k < size; ++k)
+                cells[k] = buffer.get(offset++) & 0xFF;
+            areas.add(new KillerSudoku.Area(sum, cells));
+        }
+        return areas;
+    }
+}
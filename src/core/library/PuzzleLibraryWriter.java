@@ -0,0 +1,285 @@
+package core.library;
+
+import core.DiskManager;
+import core.game.sudoku.KillerSudoku;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Writes or appends puzzles to a {@link PuzzleLibrary} file.
+ * <br>
+ * Records are streamed to the file as they are added, only the indices are kept in memory.
+ * The indices are written after them on {@link #close()}, then the header is switched to the new indices.
+ * <br>
+ * An existing library is only ever appended to: the new records and indices go after its old end, so the file stays
+ * a valid library, with the old puzzles, until the header is switched, even if writing fails or the process dies
+ * midway, and readers that map the file are never cut short. The old indices are left behind as dead space.
+ */
+public final class PuzzleLibraryWriter implements Closeable {
+    
+    /**
+     * Appends all the .sudoku and .killer game files of a folder to a library
+     * <br>
+     * Usage: PuzzleLibraryWriter &lt;library file&gt; &lt;game folder&gt;
+     * @param args The library file and the game folder
+     * @throws IOException if a file cannot be read or the library cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: PuzzleLibraryWriter <library file> <game folder>");
+            System.exit(1);
+        }
+        
+        File[] gameFiles = new File(args[1]).listFiles();
+        if(gameFiles == null)
+            throw new IOException(args[1] + ": not a folder");
+        Arrays.sort(gameFiles);
+        
+        try(PuzzleLibraryWriter writer = new PuzzleLibraryWriter(new File(args[0]))) {
+            for(File gameFile : gameFiles) {
+                String name = gameFile.getName().toLowerCase();
+                if(name.endsWith(".sudoku"))
+                    writer.addSudoku(DiskManager.readSudokuBoard(gameFile));
+                else if(name.endsWith(".killer"))
+                    writer.addKiller(DiskManager.readKillerAreas(gameFile));
+            }
+            System.out.printf("%d sudoku, %d killer sudoku%n", writer.getCount(PuzzleLibrary.Kind.SUDOKU), writer.getCount(PuzzleLibrary.Kind.KILLER));
+        }
+    }
+
+    //The size of the staging buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    //The channel of the library file
+    private final FileChannel channel;
+    //The staging buffer of the records
+    private final ByteBuffer staging = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    //The offset where the next record is written
+    private long position;
+    //The record offsets of each kind
+    private long[] sudokuIndex = new long[1024], killerIndex = new long[1024];
+    //The number of puzzles of each kind
+    private int sudokuCount, killerCount;
+
+    /**
+     * Opens a library for writing. If the file exists and is a library, new puzzles are appended to it.
+     * @param file The library file
+     * @throws IOException if the file cannot be opened or it exists but is not a library
+     */
+    public PuzzleLibraryWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if(channel.size() == 0) {
+                position = PuzzleLibrary.HEADER_SIZE;   //New library, records start after the header
+            } else {
+                readIndices(file);                      //Existing library, records are appended after its end
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the header and the indices of an existing library
+     * @param file The library file (for error messages)
+     * @throws IOException if the file is not a library
+     */
+    private void readIndices(File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PuzzleLibrary.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, 0);
+        if(header.getInt(0) != PuzzleLibrary.MAGIC || header.getShort(4) != PuzzleLibrary.VERSION)
+            throw new IOException(file + ": not a puzzle library");
+
+        sudokuCount = header.getInt(8);
+        killerCount = header.getInt(12);
+        long sudokuOffset = header.getLong(16);
+        long killerOffset = header.getLong(24);
+
+        sudokuIndex = readIndex(sudokuOffset, sudokuCount);
+        killerIndex = readIndex(killerOffset, killerCount);
+        position = channel.size();  //Nothing of the library is overwritten before the header
+    }
+
+    /**
+     * Reads an index of the library
+     * @param offset    The offset of the index
+     * @param count     The number of entries
+     * @return the entries, with room for appending
+     * @throws IOException if the index cannot be read
+     */
+    private long[] readIndex(long offset, int count) throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(8*count).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(raw, offset);
+        long[] index = new long[Math.max(1024, count*2)];
+        raw.asLongBuffer().get(index, 0, count);
+        return index;
+    }
+
+    /**
+     * Fills a buffer from the channel
+     * @param buffer    The buffer
+     * @param offset    The offset in the file
+     * @throws IOException if the file ends before the buffer is filled
+     */
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while(buffer.hasRemaining())
+            if(channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of puzzle library");
+        buffer.flip();
+    }
+
+    /**
+     * Appends a standard 9x9 sudoku
+     * @param board The board, in row major order
+     * @return the id of the new puzzle
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the board is not a 9x9 board with cells in [0, 15]
+     */
+    public int addSudoku(int[] board) throws IOException {
+        if(board.length != PuzzleLibrary.CELLS)
+            throw new IllegalArgumentException("Board is not 9x9");
+
+        for(int cell : board)
+            if(cell >>> 4 != 0)
+                throw new IllegalArgumentException("Cell does not fit in a nibble");
+
+        long offset = reserve(PuzzleLibrary.SUDOKU_RECORD_SIZE);
+        for(int k = 0; k < PuzzleLibrary.CELLS; k += 2) {
+            int low  = board[k];
+            int high = k + 1 < PuzzleLibrary.CELLS ? board[k + 1] : 0;
+            staging.put((byte) (low | high << 4));
+        }
+
+        if(sudokuCount == sudokuIndex.length)
+            sudokuIndex = Arrays.copyOf(sudokuIndex, sudokuCount*2);
+        sudokuIndex[sudokuCount] = offset;
+        return sudokuCount++;
+    }
+
+    /**
+     * Appends a killer sudoku
+     * @param areas The areas of the killer sudoku
+     * @return the id of the new puzzle
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if a sum, a size or an index of the areas does not fit in a byte
+     */
+    public int addKiller(Set<KillerSudoku.Area> areas) throws IOException {
+        if(areas.size() > 0xFF)
+            throw new IllegalArgumentException("Too many areas");
+        
+        int size = 1;
+        for(KillerSudoku.Area area : areas) {   //Validate before staging anything
+            if(area.getSum() > 0xFF || area.getIndices().size() > 0xFF)
+                throw new IllegalArgumentException("Area does not fit in a killer record");
+            for(int idx : area.getIndices())
+                if(idx < 0 || idx > 0xFF)
+                    throw new IllegalArgumentException("Area index does not fit in a killer record");
+            size += 2 + area.getIndices().size();
+        }
+
+        long offset = reserve(size);
+        staging.put((byte) areas.size());
+        for(KillerSudoku.Area area : areas) {
+            staging.put((byte) area.getSum());
+            staging.put((byte) area.getIndices().size());
+            for(int idx : area.getIndices())
+                staging.put((byte) idx);
+        }
+
+        if(killerCount == killerIndex.length)
+            killerIndex = Arrays.copyOf(killerIndex, killerCount*2);
+        killerIndex[killerCount] = offset;
+        return killerCount++;
+    }
+
+    /**
+     * Makes room in the staging buffer for a record
+     * @param size The size of the record
+     * @return the offset of the record in the file
+     * @throws IOException if flushing fails
+     */
+    private long reserve(int size) throws IOException {
+        if(staging.remaining() < size)
+            flush();
+        long offset = position + staging.position();
+        if(offset + size > Integer.MAX_VALUE)
+            throw new IOException("Puzzle library is full");
+        return offset;
+    }
+
+    /**
+     * Writes the staged records to the file
+     * @throws IOException if writing fails
+     */
+    private void flush() throws IOException {
+        staging.flip();
+        while(staging.hasRemaining())
+            position += channel.write(staging, position);
+        staging.clear();
+    }
+
+    /**
+     * Writes an index to the file
+     * @param index The entries
+     * @param count The number of entries
+     * @throws IOException if writing fails
+     */
+    private void writeIndex(long[] index, int count) throws IOException {
+        for(int k = 0; k < count; ++k) {
+            if(staging.remaining() < 8)
+                flush();
+            staging.putLong(index[k]);
+        }
+    }
+
+    /**
+     * Returns the number of puzzles of a kind, including the ones already in the library
+     * @param kind The kind
+     * @return the number of puzzles of that kind
+     */
+    public int getCount(PuzzleLibrary.Kind kind) {
+        return kind == PuzzleLibrary.Kind.SUDOKU ? sudokuCount : killerCount;
+    }
+
+    /**
+     * Writes the indices, then switches the header to them and closes the file
+     * @throws IOException if writing fails, the library is then left as it was
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            long sudokuOffset = position;
+            writeIndex(sudokuIndex, sudokuCount);
+            flush();
+            long killerOffset = position;
+            writeIndex(killerIndex, killerCount);
+            flush();
+            channel.force(false);   //The records and the indices are on disk before the header points to them
+
+            ByteBuffer header = ByteBuffer.allocate(PuzzleLibrary.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PuzzleLibrary.MAGIC)
+                    .putShort(PuzzleLibrary.VERSION)
+                    .putShort((short) 0)
+                    .putInt(sudokuCount)
+                    .putInt(killerCount)
+                    .putLong(sudokuOffset)
+                    .putLong(killerOffset)
+                    .flip();
+            while(header.hasRemaining())
+                channel.write(header, header.position());
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package core.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A byte level parser of the .sudoku and .killer text formats.
+ * <br>
+ * .sudoku: one "i,j,v" line per given (i the column, j the row, v the value)
+ * <br>
+ * .killer: one "sum,idx,idx,..." line per cage (idx the row major indices of the cells)
+ * <br>
+ * The file is read into a reused buffer and the digits are decoded straight into the board or the cage arrays,
+ * so a parser allocates nothing once warmed up. A parser is not thread safe.
+ */
+public final class TextPuzzleParser {
+
+    //The reused read buffer
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    //The name of the file being parsed (for errors)
+    private String file;
+    //The cursor and its line and the offset where the line starts
+    private int position, limit, line, lineStart;
+
+    //The parsed cages: sum and first cell of cage c, cageStarts[cageCount] ends the last cage
+    private int[] cageSums = new int[64], cageStarts = new int[65], cageCells = new int[128];
+    //The number of parsed cages
+    private int cageCount;
+    //Cells already in the current cage (reused between cages)
+    private boolean[] used = new boolean[128];
+
+    /**
+     * Parses a .sudoku file
+     * @param gameFile  The file
+     * @param board     The board to fill in row major order, of length d*d (cleared first)
+     * @param d         The board dimension
+     * @return the given board
+     * @throws PuzzleFormatException if the file is malformed
+     * @throws IOException if the file cannot be read
+     */
+    public int[] parseSudoku(File gameFile, int[] board, int d) throws IOException {
+        load(gameFile);
+        Arrays.fill(board, 0);
+
+        while(skipEmptyLines()) {
+            int at = line;
+            int i = number(0, Integer.MAX_VALUE, "column");
+            expect(',');
+            int j = number(0, Integer.MAX_VALUE, "row");
+            expect(',');
+            int v = number(0, d, "value");
+            endOfLine();
+            long idx = i + (long) j*d;  //RowMajor conversion, a column past the row spills into the next one
+            if(idx >= board.length)
+                throw new PuzzleFormatException(file, at, 1, "cell " + i + "," + j + " is outside the board");
+            board[(int) idx] = v;
+        }
+        return board;
+    }
+
+    /**
+     * Parses a .killer file. The cages are then available through {@link #getCageCount()}, {@link #getCageSum(int)}
+     * and {@link #getCageCells(int)} until the next parse.
+     * @param gameFile  The file
+     * @param cells     The number of cells of the board
+     * @return the number of cages
+     * @throws PuzzleFormatException if the file is malformed
+     * @throws IOException if the file cannot be read
+     */
+    public int parseKiller(File gameFile, int cells) throws IOException {
+        load(gameFile);
+        if(used.length < cells)
+            used = new boolean[cells];
+
+        cageCount = 0;
+        int size = 0;
+        while(skipEmptyLines()) {
+            if(cageCount + 1 == cageSums.length) {
+                cageSums   = Arrays.copyOf(cageSums, cageSums.length*2);
+                cageStarts = Arrays.copyOf(cageStarts, cageStarts.length*2);
+            }
+            cageSums[cageCount] = number(1, Integer.MAX_VALUE, "sum");
+            cageStarts[cageCount] = size;
+
+            try {
+                do {
+                    expect(',');
+                    int idx = number(0, cells - 1, "cell");
+                    if(used[idx])   //A cell repeated in its cage counts once
+                        continue;
+                    used[idx] = true;
+                    if(size == cageCells.length)
+                        cageCells = Arrays.copyOf(cageCells, size*2);
+                    cageCells[size++] = idx;
+                } while(!atEndOfLine());
+            } finally {     //Also on a malformed cage, as the parser is reused for the next file
+                for(int k = cageStarts[cageCount]; k < size; ++k)
+                    used[cageCells[k]] = false;
+            }
+            endOfLine();
+            cageCount++;
+        }
+        cageStarts[cageCount] = size;
+        return cageCount;
+    }
+
+    /**
+     * Getter for the number of parsed cages
+     * @return the number of cages of the last parsed .killer file
+     */
+    public int getCageCount() {
+        return cageCount;
+    }
+
+    /**
+     * Returns the sum of a parsed cage
+     * @param c The cage
+     * @return the sum of the cage
+     */
+    public int getCageSum(int c) {
+        return cageSums[c];
+    }
+
+    /**
+     * Returns the cells of a parsed cage
+     * @param c The cage
+     * @return a new array with the row major indices of the cells of the cage
+     */
+    public int[] getCageCells(int c) {
+        return Arrays.copyOfRange(cageCells, cageStarts[c], cageStarts[c + 1]);
+    }
+
+    /**
+     * Reads a whole file into the buffer
+     * @param gameFile The file
+     * @throws IOException if the file cannot be read
+     */
+    private void load(File gameFile) throws IOException {
+        file = gameFile.getPath();
+        try(FileChannel channel = FileChannel.open(gameFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new PuzzleFormatException(file, 1, 1, "file is too large");
+            if(buffer.capacity() < size)
+                buffer = ByteBuffer.allocate(Integer.highestOneBit((int) size - 1) << 1);
+            buffer.clear();
+            while(channel.read(buffer) > 0)
+                ;
+        }
+        position = 0;
+        limit = buffer.position();
+        line = 1;
+        lineStart = 0;
+    }
+
+    /**
+     * Skips empty lines
+     * @return true if there is a line to parse, false at the end of the file
+     */
+    private boolean skipEmptyLines() {
+        byte[] bytes = buffer.array();
+        while(position < limit && (bytes[position] == '\n' || bytes[position] == '\r'))
+            newLine();
+        return position < limit;
+    }
+
+    /** Moves past a line terminator ('\n', '\r' or "\r\n") */
+    private void newLine() {
+        byte[] bytes = buffer.array();
+        if(bytes[position++] == '\r' && position < limit && bytes[position] == '\n')
+            position++;
+        line++;
+        lineStart = position;
+    }
+
+    /**
+     * Checks if the cursor is at the end of a line
+     * @return true at a line terminator or at the end of the file
+     */
+    private boolean atEndOfLine() {
+        return position == limit || buffer.array()[position] == '\n' || buffer.array()[position] == '\r';
+    }
+
+    /**
+     * Moves past the end of the current line
+     * @throws PuzzleFormatException if the line has more characters
+     */
+    private void endOfLine() throws PuzzleFormatException {
+        if(!atEndOfLine())
+            throw error("expected end of line");
+        if(position < limit)
+            newLine();
+    }
+
+    /**
+     * Moves past an expected character
+     * @param c The character
+     * @throws PuzzleFormatException if the next character is different
+     */
+    private void expect(char c) throws PuzzleFormatException {
+        if(position == limit || buffer.array()[position] != c)
+            throw error("expected '" + c + "'");
+        position++;
+    }
+
+    /**
+     * Decodes a non negative decimal number
+     * @param min   The minimum accepted value
+     * @param max   The maximum accepted value
+     * @param what  What the number is (for errors)
+     * @return the number
+     * @throws PuzzleFormatException if there is no number or it is out of range
+     */
+    private int number(int min, int max, String what) throws PuzzleFormatException {
+        byte[] bytes = buffer.array();
+        int start = position;
+        long value = 0;
+        while(position < limit && bytes[position] >= '0' && bytes[position] <= '9' && value <= Integer.MAX_VALUE)
+            value = value*10 + (bytes[position++] - '0');
+
+        if(position == start)
+            throw error("expected " + what);
+        if(value < min || value > max) {
+            position = start;
+            throw error(what + " out of range [" + min + ", " + max + "]");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Creates an error at the cursor
+     * @param message What was wrong
+     * @return the error
+     */
+    private PuzzleFormatException error(String message) {
+        return new PuzzleFormatException(file, line, position - lineStart + 1, message);
+    }
+}
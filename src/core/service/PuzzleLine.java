@@ -0,0 +1,127 @@
+package core.service;
+
+import core.game.User;
+import core.game.sudoku.KillerSudoku;
+import core.game.sudoku.StandardKillerSudoku;
+import core.game.sudoku.Sudoku;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The one line text form of the puzzles of the {@link SolverService}.
+ * <br>
+ * A sudoku is its d*d cells in row major order, '1'-'9' then 'A'-'Z' for the values 10-35 and '0' or '.' for the empty
+ * cells, so any board whose dimension is a square up to 25 fits (4x4, 9x9, 16x16, 25x25).
+ * <br>
+ * A 9x9 killer sudoku is "killer:" followed by its cages separated by ';', each "sum,idx,idx,..." with the row major
+ * indices of its cells, as in the .killer files.
+ */
+final class PuzzleLine {
+
+    //The prefix of a killer sudoku
+    static final String KILLER_PREFIX = "killer:";
+    //The largest board dimension that has a character per value
+    static final int MAX_DIMENSION = 35;
+
+    /**
+     * Parses a puzzle
+     * @param line The line, without the line break
+     * @return a new game played by a detached user
+     * @throws IllegalArgumentException if the line is not a puzzle
+     */
+    static Sudoku parse(String line) {
+        User user = new User("service");
+        if(line.startsWith(KILLER_PREFIX))
+            return new StandardKillerSudoku("service", user, parseCages(line.substring(KILLER_PREFIX.length())));
+
+        int n = line.length();
+        int d = (int) Math.round(Math.sqrt(n)), b = (int) Math.round(Math.sqrt(d));
+        if(d*d != n || b*b != d || d > MAX_DIMENSION)
+            throw new IllegalArgumentException("length " + n + " is not the cells of a square board with square boxes");
+        int[] board = new int[n];
+        for(int idx = 0; idx < n; ++idx) {
+            int v = valueOf(line.charAt(idx));
+            if(v < 0 || v > d)
+                throw new IllegalArgumentException("'" + line.charAt(idx) + "' at " + idx + " is not a value");
+            board[idx] = v;
+        }
+        return new Sudoku("service", user, board, d, b);
+    }
+
+    /**
+     * Parses the cages of a killer sudoku
+     * @param text The cages, separated by ';'
+     * @return the cages
+     * @throws IllegalArgumentException if a cage is malformed
+     */
+    private static Set<KillerSudoku.Area> parseCages(String text) {
+        int cells = StandardKillerSudoku.BOARD_DIMENSION_SIZE*StandardKillerSudoku.BOARD_DIMENSION_SIZE;
+        Set<KillerSudoku.Area> areas = new HashSet<>();
+        for(String cage : text.split(";")) {
+            if(cage.isBlank())
+                continue;
+            String[] fields = cage.trim().split(",");
+            if(fields.length < 2)
+                throw new IllegalArgumentException("cage '" + cage + "' has no cells");
+            int[] indices = new int[fields.length - 1];
+            boolean[] used = new boolean[cells];
+            try {
+                for(int k = 0; k < indices.length; ++k) {
+                    indices[k] = Integer.parseInt(fields[k + 1].trim());
+                    if(indices[k] < 0 || indices[k] >= cells)
+                        throw new IllegalArgumentException("cell " + indices[k] + " is outside the board");
+                    if(used[indices[k]])
+                        throw new IllegalArgumentException("cell " + indices[k] + " repeats in its cage");
+                    used[indices[k]] = true;
+                }
+                areas.add(new KillerSudoku.Area(Integer.parseInt(fields[0].trim()), indices));
+            } catch(NumberFormatException e) {
+                throw new IllegalArgumentException("cage '" + cage + "' is not numbers");
+            }
+        }
+        return areas;
+    }
+
+    /**
+     * Formats the cells of a game
+     * @param game The game
+     * @return the cells in row major order
+     */
+    static String format(Sudoku game) {
+        int n = game.getBoardDimension()*game.getBoardDimension();
+        StringBuilder line = new StringBuilder(n);
+        for(int idx = 0; idx < n; ++idx)
+            line.append(charOf(game.get(idx)));
+        return line.toString();
+    }
+
+    /**
+     * Decodes the value of a cell
+     * @param c The character
+     * @return the value, 0 for empty, -1 if the character is not a value
+     */
+    private static int valueOf(char c) {
+        if(c == '.' || c == '0')
+            return 0;
+        if(c >= '1' && c <= '9')
+            return c - '0';
+        if(c >= 'A' && c <= 'Z')
+            return c - 'A' + 10;
+        if(c >= 'a' && c <= 'z')
+            return c - 'a' + 10;
+        return -1;
+    }
+
+    /**
+     * Encodes the value of a cell
+     * @param v The value, 0 for empty
+     * @return the character
+     */
+    private static char charOf(int v) {
+        return v == 0 ? '.' : v <= 9 ? (char) ('0' + v) : (char) ('A' + v - 10);
+    }
+
+    //Prevent instantiation
+    private PuzzleLine() {}
+}
@@ -0,0 +1,108 @@
+package core.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The throughput and latency of one endpoint of the {@link SolverService}.
+ * <br>
+ * Recorded by many threads without locking: the counters are adders and the latencies go to a histogram with a
+ * bucket per power of two microseconds, from which the percentiles are read within a factor of two.
+ */
+final class ServiceMetrics {
+
+    //The number of histogram buckets: bucket k counts the latencies in [2^(k-1), 2^k) microseconds
+    private static final int BUCKETS = 40;
+
+    //The name of the endpoint
+    private final String name;
+    //The requests served, their puzzles, the puzzles that failed, the requests refused while busy and the ones refused
+    //as malformed (a 4xx answer)
+    private final LongAdder requests = new LongAdder(), puzzles = new LongAdder(), errors = new LongAdder(),
+            rejected = new LongAdder(), invalid = new LongAdder();
+    //The total and the largest latency of the served requests
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    //The latency histogram
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Constructs empty metrics
+     * @param name The name of the endpoint, the prefix of the reported keys
+     */
+    ServiceMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a served request
+     * @param puzzles   The puzzles of the request
+     * @param errors    The puzzles that failed
+     * @param nanos     The latency of the request
+     */
+    void served(int puzzles, int errors, long nanos) {
+        requests.increment();
+        this.puzzles.add(puzzles);
+        this.errors.add(errors);
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos/1000)));
+    }
+
+    /** Records a request refused while busy */
+    void rejected() {
+        rejected.increment();
+    }
+
+    /** Records a request refused as malformed: a wrong method, a bad parameter or a body or batch too large */
+    void invalid() {
+        invalid.increment();
+    }
+
+    /**
+     * Appends the metrics, one "key value" line each
+     * @param out       Where to append
+     * @param seconds   The seconds since the service started
+     */
+    void report(StringBuilder out, double seconds) {
+        long served = requests.sum();
+        line(out, "requests", served);
+        line(out, "puzzles", puzzles.sum());
+        line(out, "errors", errors.sum());
+        line(out, "rejected", rejected.sum());
+        line(out, "invalid", invalid.sum());
+        line(out, "puzzles_per_second", seconds > 0 ? puzzles.sum() / seconds : 0);
+        line(out, "latency_mean_ms", served > 0 ? totalNanos.sum() / 1e6 / served : 0);
+        line(out, "latency_p50_ms", percentile(served, 0.50));
+        line(out, "latency_p99_ms", percentile(served, 0.99));
+        line(out, "latency_max_ms", maxNanos.get() / 1e6);
+    }
+
+    /**
+     * Reads a percentile of the latency from the histogram
+     * @param served    The number of served requests
+     * @param p         The percentile, in (0, 1]
+     * @return the upper bound of the bucket of the percentile, at most the largest latency, in milliseconds (0 if
+     * nothing was served)
+     */
+    private double percentile(long served, double p) {
+        long rank = (long) Math.ceil(served * p), seen = 0;
+        for(int k = 0; k < BUCKETS && served > 0; ++k) {
+            seen += histogram.get(k);
+            if(seen >= rank)
+                return Math.min((1L << k) * 1000, maxNanos.get()) / 1e6;
+        }
+        return 0;
+    }
+
+    /**
+     * Appends a metric
+     * @param out   Where to append
+     * @param key   The key, after the name of the endpoint
+     * @param value The value
+     */
+    private void line(StringBuilder out, String key, Object value) {
+        out.append(name).append('_').append(key).append(' ').append(value).append('\n');
+    }
+}
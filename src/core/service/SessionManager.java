@@ -0,0 +1,273 @@
+package core.service;
+
+import core.game.User;
+import core.game.sudoku.Sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Holds the games of many concurrent sessions, keyed by a session id (for example the user and the game).
+ * <br>
+ * A {@link Sudoku} is not thread safe, so a game is only reached through {@link #apply(String, Function)}, which runs
+ * under the lock of the session. The sessions share a fixed set of striped locks, chosen by the hash of the id, so
+ * sessions on different stripes never wait for each other and the locks cost nothing per session.
+ * <br>
+ * Memory is bounded by the number of live games: a session idle for longer than the idle time, or the least recently
+ * used ones once there are more live games than the limit, are evicted to a {@link Sudoku.Snapshot} of a few dozen
+ * bytes and restored on their next use. Listeners of an evicted game are dropped.
+ */
+public final class SessionManager {
+
+    //The number of lock stripes, a power of two
+    private static final int STRIPES = 64;
+
+    //The locks of the sessions, by the hash of the id
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    //The sessions
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    //The most live games, and the time after which an unused game is evicted
+    private final int maxLive;
+    private final long idleNanos;
+    //The number of live games
+    private final AtomicInteger live = new AtomicInteger();
+    //Set while a thread evicts the games over the limit
+    private final AtomicBoolean enforcing = new AtomicBoolean();
+    //The evictions and restores so far
+    private final LongAdder evictions = new LongAdder(), restores = new LongAdder();
+
+    /**
+     * Constructs an empty manager
+     * @param maxLive   The most games kept live, the rest are kept as snapshots
+     * @param idleTime  The time after which an unused game may be evicted by {@link #evictIdle()}
+     * @param unit      The unit of the idle time
+     */
+    public SessionManager(int maxLive, long idleTime, TimeUnit unit) {
+        if(maxLive <= 0)
+            throw new IllegalArgumentException("Max live is not positive");
+        if(idleTime < 0)
+            throw new IllegalArgumentException("Idle time is negative");
+        this.maxLive = maxLive;
+        this.idleNanos = unit.toNanos(idleTime);
+        for(int s = 0; s < STRIPES; ++s)
+            stripes[s] = new ReentrantLock();
+    }
+
+    /**
+     * Opens a session, replacing any session with the same id
+     * @param id    The id of the session
+     * @param user  The user playing the game
+     * @param game  The game, which the manager owns from now on
+     */
+    public void open(String id, User user, Sudoku game) {
+        if(id == null)
+            throw new NullPointerException("Id is null");
+        if(user == null)
+            throw new NullPointerException("User is null");
+        if(game == null)
+            throw new NullPointerException("Game is null");
+
+        ReentrantLock lock = lockOf(id);
+        lock.lock();
+        try {
+            Session old = sessions.put(id, new Session(user, game));
+            if(old == null || old.game == null)
+                live.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+        enforceLimit();
+    }
+
+    /**
+     * Runs an action on the game of a session, restoring the game if it was evicted. The action has the game to
+     * itself and must not keep it after it returns.
+     * @param id        The id of the session
+     * @param action    The action
+     * @param <T>       The result of the action
+     * @return the result of the action
+     * @throws IllegalArgumentException if there is no session with the id
+     */
+    public <T> T apply(String id, Function<? super Sudoku, ? extends T> action) {
+        ReentrantLock lock = lockOf(id);
+        T result;
+        lock.lock();
+        try {
+            Session session = sessions.get(id);
+            if(session == null)
+                throw new IllegalArgumentException("No session " + id);
+            if(session.game == null) {
+                session.game = session.snapshot.restore(session.user);
+                session.snapshot = null;
+                live.incrementAndGet();
+                restores.increment();
+            }
+            session.lastUsed = System.nanoTime();
+            result = action.apply(session.game);
+        } finally {
+            lock.unlock();
+        }
+        enforceLimit();
+        return result;
+    }
+
+    /**
+     * Closes a session
+     * @param id The id of the session
+     * @return true if the session existed, false otherwise
+     */
+    public boolean close(String id) {
+        ReentrantLock lock = lockOf(id);
+        lock.lock();
+        try {
+            Session session = sessions.remove(id);
+            if(session != null && session.game != null)
+                live.decrementAndGet();
+            return session != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the games unused for longer than the idle time. Meant to be called periodically; sessions in use are
+     * skipped.
+     * @return the number of evicted games
+     */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for(Map.Entry<String, Session> entry : sessions.entrySet())
+            if(entry.getValue().game != null && now - entry.getValue().lastUsed > idleNanos
+                    && evict(entry.getKey(), entry.getValue(), true))
+                ++evicted;
+        return evicted;
+    }
+
+    /**
+     * Evicts the least recently used games down to three quarters of the limit, if it is exceeded. One thread
+     * evicts at a time; the others go on, since the limit is restored for all of them.
+     */
+    private void enforceLimit() {
+        if(live.get() <= maxLive || !enforcing.compareAndSet(false, true))
+            return;
+        try {
+            List<Map.Entry<String, Session>> live = new ArrayList<>();
+            List<Long> lastUsed = new ArrayList<>();    //Read once, as the sessions keep being used
+            for(Map.Entry<String, Session> entry : sessions.entrySet())
+                if(entry.getValue().game != null) {
+                    live.add(entry);
+                    lastUsed.add(entry.getValue().lastUsed);
+                }
+            Integer[] order = new Integer[live.size()];
+            for(int k = 0; k < order.length; ++k)
+                order[k] = k;
+            Arrays.sort(order, Comparator.comparingLong(lastUsed::get));
+            int excess = this.live.get() - maxLive*3/4;
+            for(int k = 0; k < order.length && excess > 0; ++k)
+                if(evict(live.get(order[k]).getKey(), live.get(order[k]).getValue(), false))
+                    --excess;
+        } finally {
+            enforcing.set(false);
+        }
+    }
+
+    /**
+     * Evicts a game to a snapshot, unless its session is locked
+     * @param id        The id of the session
+     * @param session   The session
+     * @param idle      Evict only if unused for longer than the idle time
+     * @return true if the game was evicted, false otherwise
+     */
+    private boolean evict(String id, Session session, boolean idle) {
+        ReentrantLock lock = lockOf(id);
+        if(!lock.tryLock())     //In use, so not idle
+            return false;
+        try {
+            if(session.game == null || sessions.get(id) != session
+                    || (idle && System.nanoTime() - session.lastUsed <= idleNanos))
+                return false;
+            session.snapshot = session.game.snapshot();
+            session.game = null;
+            live.decrementAndGet();
+            evictions.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lock of a session
+     * @param id The id of the session
+     * @return the lock of its stripe
+     */
+    private ReentrantLock lockOf(String id) {
+        int h = id.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Getter for the number of sessions
+     * @return the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Getter for the number of live games
+     * @return the number of sessions whose game is not evicted
+     */
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    /**
+     * Getter for the evictions
+     * @return the number of games evicted so far
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Getter for the restores
+     * @return the number of games restored so far
+     */
+    public long getRestores() {
+        return restores.sum();
+    }
+
+    /** A session: its user and either its game or the snapshot of it, guarded by the lock of the session */
+    private static final class Session {
+        //The user
+        final User user;
+        //The live game, or null if evicted
+        Sudoku game;
+        //The snapshot of the evicted game, or null if live
+        Sudoku.Snapshot snapshot;
+        //When the game was last used (System.nanoTime); read without the lock to pick eviction candidates
+        volatile long lastUsed = System.nanoTime();
+
+        /**
+         * Constructs a live session
+         * @param user The user
+         * @param game The game
+         */
+        Session(User user, Sudoku game) {
+            this.user = user;
+            this.game = game;
+        }
+    }
+}
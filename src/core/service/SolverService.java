@@ -0,0 +1,350 @@
+package core.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import core.game.solvers.CandidateSolver;
+import core.game.solvers.Hint;
+import core.game.solvers.HintEngine;
+import core.game.solvers.SolutionCounter;
+import core.game.solvers.SudokuSolver;
+import core.game.sudoku.Sudoku;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP service that solves, counts, validates and rates puzzles, so that other tools can use the solvers
+ * without the window.
+ * <br>
+ * Every endpoint takes a POST with a text body of puzzles, one per line in the form of {@link PuzzleLine} (empty lines
+ * and lines starting with '#' are skipped), and answers a line per puzzle in the same order:
+ * <ul>
+ *     <li>/solve: the solved cells, or "unsolvable"</li>
+ *     <li>/count?limit=n: the number of solutions, at most n (2 by default)</li>
+ *     <li>/validate: "unique", "multiple", "unsolvable" or "illegal" (the givens break a rule)</li>
+ *     <li>/rate: the hardest technique of {@link Hint.Technique} needed to fill the board with hints, "unrated" if
+ *     the hints get stuck, or "illegal"</li>
+ * </ul>
+ * A puzzle that cannot be parsed answers "error: " and the reason, without failing the others. A request with more than
+ * {@link #MAX_BATCH} puzzles is refused with 413 before any is answered. GET /metrics reports the throughput and
+ * latency of every endpoint and the requests it refused.
+ * <br>
+ * The requests are served by a fixed pool of workers behind a bounded queue. When the queue is full a request is
+ * answered at once with 503 and a Retry-After header instead of waiting, so a burst cannot pile up unbounded work.
+ * The service listens on the loopback address only.
+ */
+public final class SolverService {
+
+    /**
+     * Runs the service until the process is stopped
+     * <br>
+     * Usage: SolverService [--port n] [--threads n] [--queue n]
+     * @param args The options
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT, threads = Runtime.getRuntime().availableProcessors(), queue = DEFAULT_QUEUE;
+        for(int a = 0; a < args.length; ++a) {
+            if(a + 1 < args.length && args[a].equals("--port"))
+                port = Integer.parseInt(args[++a]);
+            else if(a + 1 < args.length && args[a].equals("--threads"))
+                threads = Integer.parseInt(args[++a]);
+            else if(a + 1 < args.length && args[a].equals("--queue"))
+                queue = Integer.parseInt(args[++a]);
+            else {
+                System.err.println("Usage: SolverService [--port n] [--threads n] [--queue n]");
+                System.exit(1);
+            }
+        }
+
+        SolverService service = new SolverService(port, threads, queue, new CandidateSolver());
+        service.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+        System.err.printf("Listening on http://localhost:%d with %d workers%n", service.getPort(), threads);
+    }
+
+    //The default port and queue capacity
+    public static final int DEFAULT_PORT = 8765, DEFAULT_QUEUE = 64;
+    //The most puzzles and bytes a request may carry
+    public static final int MAX_BATCH = 10_000, MAX_BODY = 16 << 20;
+    //The default and the largest limit of /count
+    private static final int DEFAULT_LIMIT = 2, MAX_LIMIT = 1000;
+
+    //The endpoints
+    private enum Endpoint { SOLVE, COUNT, VALIDATE, RATE }
+
+    //The server
+    private final HttpServer server;
+    //The workers and their queue
+    private final ThreadPoolExecutor workers;
+    //The solver, shared by the workers
+    private final SudokuSolver solver;
+    //The metrics of each endpoint
+    private final ServiceMetrics[] metrics = new ServiceMetrics[Endpoint.values().length];
+    //When the service started
+    private final long startNanos = System.nanoTime();
+    //Set on the thread that answers a request refused by a full queue
+    private static final ThreadLocal<Boolean> overloaded = new ThreadLocal<>();
+
+    /**
+     * Constructs a stopped service
+     * @param port      The port, 0 for any free one
+     * @param threads   The number of workers
+     * @param queue     The number of requests that may wait for a worker
+     * @param solver    The solver, which must be safe to use from many threads at once
+     * @throws IOException if the port cannot be bound
+     */
+    public SolverService(int port, int threads, int queue, SudokuSolver solver) throws IOException {
+        if(threads <= 0)
+            throw new IllegalArgumentException("Threads is not positive");
+        if(queue <= 0)
+            throw new IllegalArgumentException("Queue is not positive");
+        if(solver == null)
+            throw new NullPointerException("Solver is null");
+        this.solver = solver;
+
+        AtomicInteger created = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue),
+                task -> {
+                    Thread thread = new Thread(task, "solver-service-" + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {   //Full: answer on the accepting thread, which only writes the refusal
+                    overloaded.set(Boolean.TRUE);
+                    try {
+                        task.run();
+                    } finally {
+                        overloaded.remove();
+                    }
+                });
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(workers);
+        for(Endpoint endpoint : Endpoint.values()) {
+            String name = endpoint.name().toLowerCase();
+            metrics[endpoint.ordinal()] = new ServiceMetrics(name);
+            server.createContext("/" + name, exchange -> serve(exchange, endpoint));
+        }
+        server.createContext("/metrics", this::serveMetrics);
+    }
+
+    /** Starts accepting requests */
+    public void start() {
+        server.start();
+    }
+
+    /** Stops accepting requests, waits a second for the ones being served and stops the workers */
+    public void stop() {
+        server.stop(1);
+        workers.shutdownNow();
+    }
+
+    /**
+     * Getter for the port
+     * @return the port the service listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves a batch of puzzles
+     * @param exchange  The exchange
+     * @param endpoint  The endpoint
+     * @throws IOException if the exchange fails
+     */
+    private void serve(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        long start = System.nanoTime();
+        ServiceMetrics metrics = this.metrics[endpoint.ordinal()];
+        try {
+            if(overloaded.get() != null) {
+                metrics.rejected();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "busy\n");
+                return;
+            }
+            if(!exchange.getRequestMethod().equals("POST")) {
+                metrics.invalid();
+                respond(exchange, 405, "POST a puzzle per line\n");
+                return;
+            }
+            int limit = DEFAULT_LIMIT;
+            String limitParameter = parameter(exchange.getRequestURI(), "limit");
+            if(limitParameter != null) {
+                try {
+                    limit = Integer.parseInt(limitParameter);
+                } catch(NumberFormatException e) {
+                    limit = -1;
+                }
+                if(limit <= 0 || limit > MAX_LIMIT) {
+                    metrics.invalid();
+                    respond(exchange, 400, "limit is not in 1.." + MAX_LIMIT + "\n");
+                    return;
+                }
+            }
+            String body = read(exchange.getRequestBody());
+            if(body == null) {
+                metrics.invalid();
+                respond(exchange, 413, "body exceeds " + MAX_BODY + " bytes\n");
+                return;
+            }
+
+            List<String> lines = new ArrayList<>();    //Counted before any is answered
+            for(String line : body.split("\r?\n")) {
+                line = line.strip();
+                if(!line.isEmpty() && !line.startsWith("#"))
+                    lines.add(line);
+            }
+            if(lines.size() > MAX_BATCH) {
+                metrics.invalid();
+                respond(exchange, 413, "batch exceeds " + MAX_BATCH + " puzzles\n");
+                return;
+            }
+
+            StringBuilder out = new StringBuilder();
+            int errors = 0;
+            for(String line : lines) {
+                try {
+                    out.append(answer(endpoint, PuzzleLine.parse(line), limit));
+                } catch(IllegalArgumentException e) {
+                    out.append("error: ").append(e.getMessage());
+                    ++errors;
+                }
+                out.append('\n');
+            }
+            respond(exchange, 200, out.toString());
+            metrics.served(lines.size(), errors, System.nanoTime() - start);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answers a puzzle
+     * @param endpoint  The endpoint
+     * @param game      The puzzle
+     * @param limit     The solutions to count up to
+     * @return the answer, without the line break
+     */
+    private String answer(Endpoint endpoint, Sudoku game, int limit) {
+        switch(endpoint) {
+            case SOLVE:
+                return !game.hasConflicts() && solver.solve(game) ? PuzzleLine.format(game) : "unsolvable";
+            case COUNT:
+                return Integer.toString(game.hasConflicts() ? 0 : count(game, limit));
+            case VALIDATE:
+                if(game.hasConflicts())
+                    return "illegal";
+                switch(count(game, 2)) {
+                    case 0:  return "unsolvable";
+                    case 1:  return "unique";
+                    default: return "multiple";
+                }
+            case RATE:
+                if(game.hasConflicts())
+                    return "illegal";
+                Hint.Technique technique = HintEngine.rate(game);
+                return technique == null ? "unrated" : technique.name().toLowerCase();
+            default:
+                throw new AssertionError(endpoint);
+        }
+    }
+
+    /**
+     * Counts the solutions of a puzzle, on the raw board for a plain sudoku
+     * @param game  The puzzle, without conflicts
+     * @param limit The number of solutions to stop at
+     * @return the number of solutions, at most limit
+     */
+    private static int count(Sudoku game, int limit) {
+        int d = game.getBoardDimension();
+        if(game.getClass() != Sudoku.class)
+            return CandidateSolver.count(game, limit);
+        int[] board = new int[d*d];
+        for(int idx = 0; idx < board.length; ++idx)
+            board[idx] = game.get(idx);
+        return SolutionCounter.count(board, d, game.getBoxDimension(), limit);
+    }
+
+    /**
+     * Serves the metrics of every endpoint, one "key value" line each
+     * @param exchange The exchange
+     * @throws IOException if the exchange fails
+     */
+    private void serveMetrics(HttpExchange exchange) throws IOException {
+        try {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            StringBuilder out = new StringBuilder();
+            out.append("uptime_seconds ").append(seconds).append('\n');
+            out.append("queued ").append(workers.getQueue().size()).append('\n');
+            out.append("active_workers ").append(workers.getActiveCount()).append('\n');
+            for(ServiceMetrics endpoint : metrics)
+                endpoint.report(out, seconds);
+            respond(exchange, 200, out.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads a request body, up to {@link #MAX_BODY} bytes
+     * @param in The body
+     * @return the body as UTF-8 text, or null if it is too large
+     * @throws IOException if reading fails
+     */
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1 << 14];
+        for(int n; (n = in.read(buffer)) != -1; ) {
+            if(body.size() + n > MAX_BODY)
+                return null;
+            body.write(buffer, 0, n);
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds a parameter of the query of a request
+     * @param uri   The request
+     * @param name  The parameter
+     * @return the value, or null if the query does not have it
+     */
+    private static String parameter(URI uri, String name) {
+        String query = uri.getQuery();
+        if(query == null)
+            return null;
+        for(String pair : query.split("&"))
+            if(pair.startsWith(name + "="))
+                return pair.substring(name.length() + 1);
+        return null;
+    }
+
+    /**
+     * Sends a text response
+     * @param exchange  The exchange
+     * @param status    The status code
+     * @param text      The body
+     * @throws IOException if sending fails
+     */
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}